@@ -0,0 +1,169 @@
+package com.ray3k.libraryinvaders.benchmarks;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.PixmapPacker;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.ray3k.libraryinvaders.AtlasCache;
+import com.ray3k.libraryinvaders.AtlasLoader;
+import com.ray3k.libraryinvaders.Core;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Atlas building from the images in library_invader_data, cold on one or every
+ * core and from the atlas cache, and region lookups in the result. Runs from core/assets like
+ * the desktop launcher.
+ */
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AtlasBenchmark {
+    @State(Scope.Benchmark)
+    public static class Assets {
+        private static final String KEY = "benchmark";
+        private Core core;
+        private TextureAtlas atlas;
+        private String[] names;
+        private AtlasCache cache;
+
+        @Setup
+        public void setup() {
+            GdxFixture.init();
+            core = new Core();
+            core.initManagers();
+            core.createLocalFiles();
+            core.setAtlasCacheEnabled(false);
+            core.loadAssets();
+            core.getAssetManager().finishLoading();
+            core.packPixmaps();
+            atlas = core.getAtlas();
+            
+            Array<String> list = new Array<String>();
+            for (ObjectMap.Entry<String, Array<String>> pack : core.getImagePacks()) {
+                if (!pack.key.equals(Core.CHARACTERS_PATH)) {
+                    list.addAll(pack.value);
+                }
+            }
+            list.add("white");
+            names = list.toArray(String.class);
+            
+            cache = new AtlasCache(Gdx.files.local(Core.DATA_PATH + "/.cache/benchmark"));
+            cache.save(KEY, core.getPixmapPacker());
+        }
+
+        @TearDown
+        public void tearDown() {
+            cache.clear();
+            core.dispose();
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class Packer {
+        @Param({"1", "0"})
+        private int threads;
+        private ExecutorService executor;
+        private PixmapPacker pixmapPacker;
+        private TextureAtlas atlas;
+        
+        @Setup(Level.Trial)
+        public void startDecoders() {
+            executor = AtlasLoader.newExecutor(threads == 0 ? AtlasLoader.getDefaultThreads() : threads);
+        }
+        
+        @TearDown(Level.Trial)
+        public void stopDecoders() {
+            executor.shutdown();
+        }
+
+        @Setup(Level.Invocation)
+        public void setup() {
+            pixmapPacker = Core.newPixmapPacker();
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            if (atlas != null) {
+                atlas.dispose();
+                atlas = null;
+            }
+            pixmapPacker.dispose();
+        }
+    }
+
+    /**
+     * Decodes and packs every image into a new atlas, as on a cold start, with
+     * threads 0 meaning one decoder per core.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public TextureAtlas pack(Assets assets, Packer packer) {
+        AtlasLoader loader = new AtlasLoader(assets.core.getImageFiles(), packer.pixmapPacker, null, packer.executor);
+        loader.run();
+        loader.finishLoading();
+        packer.atlas = packer.pixmapPacker.generateTextureAtlas(Texture.TextureFilter.Linear, Texture.TextureFilter.Linear, false);
+        return packer.atlas;
+    }
+
+    /**
+     * Loads the same atlas from the cache, as on a warm start.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public TextureAtlas loadCached(Assets assets, Packer packer) {
+        packer.atlas = assets.cache.load(Assets.KEY);
+        return packer.atlas;
+    }
+
+    /**
+     * Hashes every image to find the cache key, which a warm start does
+     * before loading.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String computeKey(Assets assets) {
+        return assets.cache.computeKey(assets.core.getImageFiles(), assets.core.getPixmapPacker());
+    }
+
+    /**
+     * Looks up every region in the atlas by name once.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void findRegion(Assets assets, Blackhole blackhole) {
+        for (String name : assets.names) {
+            blackhole.consume(assets.atlas.findRegion(name));
+        }
+    }
+
+    /**
+     * Looks up a name that is not in the atlas, which scans every region.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public TextureAtlas.AtlasRegion findMissingRegion(Assets assets) {
+        return assets.atlas.findRegion("missing");
+    }
+}
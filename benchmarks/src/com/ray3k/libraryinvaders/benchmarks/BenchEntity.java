@@ -0,0 +1,72 @@
+package com.ray3k.libraryinvaders.benchmarks;
+
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.ray3k.libraryinvaders.ContactManager.ContactAdapter;
+import com.ray3k.libraryinvaders.Entity;
+import com.ray3k.libraryinvaders.EntityManager;
+
+/**
+ * Entity that drifts inside the world bounds, bouncing off the edges, and
+ * counts the contacts it begins.
+ */
+public class BenchEntity extends Entity {
+    public static final ContactAdapter<BenchEntity, BenchEntity> CONTACT = new ContactAdapter<BenchEntity, BenchEntity>() {
+        @Override
+        public void onContactBegin(BenchEntity entity, BenchEntity other) {
+            entity.contactCount++;
+            other.contactCount++;
+        }
+    };
+    private float worldWidth;
+    private float worldHeight;
+    private int contactCount;
+
+    public BenchEntity(EntityManager manager) {
+        super(manager, null);
+    }
+
+    public void setWorldSize(float worldWidth, float worldHeight) {
+        this.worldWidth = worldWidth;
+        this.worldHeight = worldHeight;
+    }
+
+    public int getContactCount() {
+        return contactCount;
+    }
+
+    @Override
+    public void create() {
+    }
+
+    @Override
+    public void act(float delta) {
+        if ((getX() < 0.0f && getXspeed() < 0.0f) || (getX() > worldWidth && getXspeed() > 0.0f)) {
+            setXspeed(-getXspeed());
+        }
+        if ((getY() < 0.0f && getYspeed() < 0.0f) || (getY() > worldHeight && getYspeed() > 0.0f)) {
+            setYspeed(-getYspeed());
+        }
+    }
+
+    @Override
+    public void act_end(float delta) {
+    }
+
+    @Override
+    public void draw(SpriteBatch spriteBatch, float delta) {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    @Override
+    public void collision(Entity other) {
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        contactCount = 0;
+    }
+}
@@ -0,0 +1,55 @@
+package com.ray3k.libraryinvaders.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The collision phase on its own, over a world that stays still between
+ * invocations so every invocation tests the same pairs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CollisionBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int count;
+    @Param({"SPARSE", "DENSE", "STATIC"})
+    public Scenario scenario;
+    @Param({"true"})
+    public boolean broadphase;
+    @Param({"1"})
+    public int parallelism;
+    private World world;
+
+    @Setup
+    public void setup() {
+        world = new World(scenario, count);
+        world.getManager().setBroadphaseEnabled(broadphase);
+        world.getManager().setParallelism(parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        world.dispose();
+    }
+
+    @Benchmark
+    public int collide() {
+        world.getManager().collide();
+        return world.getManager().getContactManager().getPairTests();
+    }
+}
@@ -0,0 +1,51 @@
+package com.ray3k.libraryinvaders.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A full {@link com.ray3k.libraryinvaders.EntityManager#act(float)} tick:
+ * integration, entity updates, collision and contact dispatch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EntityManagerBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int count;
+    @Param({"SPARSE", "DENSE"})
+    public Scenario scenario;
+    @Param({"1"})
+    public int parallelism;
+    private World world;
+
+    @Setup
+    public void setup() {
+        world = new World(scenario, count);
+        world.getManager().setParallelism(parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        world.dispose();
+    }
+
+    @Benchmark
+    public void act() {
+        world.getManager().act(World.DELTA);
+    }
+}
@@ -0,0 +1,33 @@
+package com.ray3k.libraryinvaders.benchmarks;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.ray3k.libraryinvaders.headless.NoopGL20;
+
+/**
+ * Sets up libGDX for benchmarks without a window or GL context. The headless
+ * backend loads the natives and provides files, audio and input, and GL calls
+ * go to a {@link NoopGL20}, so textures and sprite batches can be created and
+ * used on the benchmark thread.
+ */
+public final class GdxFixture {
+    private static boolean initialized;
+
+    private GdxFixture() {
+    }
+
+    public static synchronized void init() {
+        if (!initialized) {
+            Gdx.gl = Gdx.gl20 = NoopGL20.create();
+            
+            //a negative interval creates the listener and ends the main loop without rendering
+            HeadlessApplicationConfiguration config = new HeadlessApplicationConfiguration();
+            config.renderInterval = -1.0f;
+            new HeadlessApplication(new ApplicationAdapter() {
+            }, config);
+            initialized = true;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.ray3k.libraryinvaders.benchmarks;
+
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.utils.Array;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Draw preparation: re-sorting the render queue after depth changes, and a
+ * full draw into a sprite batch whose GL calls do nothing, which measures
+ * culling and vertex building.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RenderQueueBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int count;
+    @Param({"16"})
+    public int changeInterval;
+    private World world;
+    private SpriteBatch spriteBatch;
+    private OrthographicCamera camera;
+
+    @Setup
+    public void setup() {
+        world = new World(Scenario.SPARSE, count);
+        spriteBatch = new SpriteBatch();
+        camera = new OrthographicCamera();
+        camera.setToOrtho(false, world.getWidth(), world.getHeight());
+        camera.update();
+        spriteBatch.setProjectionMatrix(camera.combined);
+        world.getManager().getRenderQueue().prepare();
+    }
+
+    @TearDown
+    public void tearDown() {
+        spriteBatch.dispose();
+        world.dispose();
+    }
+
+    /**
+     * Changes the depth of every changeInterval-th entity, then sorts.
+     */
+    @Benchmark
+    public void sort() {
+        Array<BenchEntity> entities = world.getEntities();
+        for (int i = 0; i < entities.size; i += changeInterval) {
+            BenchEntity entity = entities.get(i);
+            entity.setDepth((entity.getDepth() + 1) % 8);
+        }
+        world.getManager().getRenderQueue().prepare();
+    }
+
+    @Benchmark
+    public int draw() {
+        spriteBatch.begin();
+        world.getManager().draw(spriteBatch, 0.0f, camera);
+        spriteBatch.end();
+        return spriteBatch.renderCalls;
+    }
+}
@@ -0,0 +1,31 @@
+package com.ray3k.libraryinvaders.benchmarks;
+
+/**
+ * How a benchmark {@link World} is populated. Density is the average number of
+ * entities per 64x64 area, and the fractions are of the entity count.
+ */
+public enum Scenario {
+    /**
+     * Every entity moving with few overlaps.
+     */
+    SPARSE(0.5f, 1.0f, 0.0f),
+    /**
+     * Crowded and moving, with some fast entities using continuous collision.
+     */
+    DENSE(4.0f, 1.0f, 0.1f),
+    /**
+     * Mostly still entities crossed by fast continuous ones, like barricades
+     * and bullets.
+     */
+    STATIC(2.0f, 0.1f, 0.1f);
+    
+    final float density;
+    final float moving;
+    final float continuous;
+
+    private Scenario(float density, float moving, float continuous) {
+        this.density = density;
+        this.moving = moving;
+        this.continuous = continuous;
+    }
+}
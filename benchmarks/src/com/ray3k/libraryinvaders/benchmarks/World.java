@@ -0,0 +1,103 @@
+package com.ray3k.libraryinvaders.benchmarks;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.RandomXS128;
+import com.badlogic.gdx.utils.Array;
+import com.ray3k.libraryinvaders.EntityManager;
+import com.ray3k.libraryinvaders.EntityPool;
+
+/**
+ * An {@link EntityManager} populated with {@link BenchEntity} instances
+ * according to a {@link Scenario}. The world grows with the entity count so
+ * the density stays the same, and the same seed always builds the same world.
+ * Entities use a few textures and depths so that drawing has sorting and
+ * texture switches to do.
+ */
+public class World {
+    public static final float DELTA = 0.01f;
+    public static final long SEED = 42;
+    private static final int TEXTURE_COUNT = 4;
+    private static final int DEPTH_COUNT = 8;
+    private final EntityManager manager;
+    private final Array<BenchEntity> entities;
+    private final Texture[] textures;
+    private final float width;
+    private final float height;
+
+    public World(Scenario scenario, int count) {
+        this(scenario, count, SEED);
+    }
+
+    public World(Scenario scenario, int count, long seed) {
+        GdxFixture.init();
+        
+        float area = count * 64.0f * 64.0f / scenario.density;
+        width = (float) Math.sqrt(area * 4.0f / 3.0f);
+        height = area / width;
+        
+        textures = new Texture[TEXTURE_COUNT];
+        TextureRegion[] regions = new TextureRegion[TEXTURE_COUNT];
+        for (int i = 0; i < TEXTURE_COUNT; i++) {
+            textures[i] = new Texture(32, 32, Pixmap.Format.RGBA8888);
+            regions[i] = new TextureRegion(textures[i], 0, 0, 16 + 4 * i, 16 + 4 * i);
+        }
+        
+        manager = new EntityManager();
+        manager.addContactHandler(BenchEntity.class, BenchEntity.class, BenchEntity.CONTACT);
+        manager.addPool(BenchEntity.class, new EntityPool<BenchEntity>() {
+            @Override
+            protected BenchEntity newObject() {
+                return new BenchEntity(manager);
+            }
+        });
+        
+        RandomXS128 random = new RandomXS128(seed);
+        entities = new Array<BenchEntity>(count);
+        for (int i = 0; i < count; i++) {
+            BenchEntity entity = manager.obtain(BenchEntity.class);
+            entity.setWorldSize(width, height);
+            TextureRegion region = regions[random.nextInt(TEXTURE_COUNT)];
+            entity.setTextureRegion(region);
+            entity.setDepth(random.nextInt(DEPTH_COUNT));
+            entity.setPosition(random.nextFloat() * width, random.nextFloat() * height);
+            entity.setCheckingCollisions(true);
+            entity.getCollisionBox().setSize(region.getRegionWidth(), region.getRegionHeight());
+            
+            if (random.nextFloat() < scenario.continuous) {
+                entity.setContinuousCollision(true);
+                entity.setMotion(500.0f, random.nextFloat() * 360.0f);
+            } else if (random.nextFloat() < scenario.moving) {
+                entity.setMotion(50.0f + random.nextFloat() * 150.0f, random.nextFloat() * 360.0f);
+            }
+            entities.add(entity);
+        }
+        
+        //adds the spawned entities to the update order
+        manager.act(DELTA);
+    }
+
+    public EntityManager getManager() {
+        return manager;
+    }
+
+    public Array<BenchEntity> getEntities() {
+        return entities;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    public void dispose() {
+        manager.dispose();
+        for (Texture texture : textures) {
+            texture.dispose();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Raymond Buckley.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ray3k.libraryinvaders;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.PixmapIO;
+import com.badlogic.gdx.graphics.g2d.PixmapPacker;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.StreamUtils;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Keeps the pages and region table of a packed atlas on disk, keyed by a hash
+ * of the images that went into it, so later launches with the same images can
+ * load the atlas instead of decoding and packing every image again. Only the
+ * most recently saved atlas is kept.
+ */
+public class AtlasCache {
+    private static final int VERSION = 1;
+    private final FileHandle directory;
+
+    public AtlasCache(FileHandle directory) {
+        this.directory = directory;
+    }
+    
+    /**
+     * Returns a SHA-1 over the path, size, modification time and contents of
+     * each file in order, and the settings of the packer. Any change to the
+     * images or to how they are packed gives a new key.
+     */
+    public String computeKey(Array<FileHandle> files, PixmapPacker packer) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new GdxRuntimeException(e);
+        }
+        
+        update(digest, VERSION + " " + packer.getPageWidth() + "x" + packer.getPageHeight() + " " + packer.getPageFormat() + " " + packer.getPadding() + " " + packer.getDuplicateBorder());
+        byte[] buffer = new byte[64 * 1024];
+        for (FileHandle file : files) {
+            update(digest, file.path());
+            update(digest, file.length());
+            update(digest, file.lastModified());
+            
+            InputStream input = file.read();
+            try {
+                int count;
+                while ((count = input.read(buffer)) != -1) {
+                    digest.update(buffer, 0, count);
+                }
+            } catch (IOException e) {
+                throw new GdxRuntimeException("Error reading file: " + file.path(), e);
+            } finally {
+                StreamUtils.closeQuietly(input);
+            }
+        }
+        
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = Character.forDigit((hash[i] >> 4) & 0xF, 16);
+            hex[i * 2 + 1] = Character.forDigit(hash[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+    
+    private static void update(MessageDigest digest, String value) {
+        try {
+            digest.update(value.getBytes("UTF-8"));
+            digest.update((byte) 0);
+        } catch (UnsupportedEncodingException e) {
+            throw new GdxRuntimeException(e);
+        }
+    }
+    
+    private static void update(MessageDigest digest, long value) {
+        for (int i = 56; i >= 0; i -= 8) {
+            digest.update((byte) (value >>> i));
+        }
+    }
+    
+    public FileHandle getAtlasFile(String key) {
+        return directory.child(key + ".atlas");
+    }
+    
+    public boolean contains(String key) {
+        return getAtlasFile(key).exists();
+    }
+    
+    /**
+     * Loads the atlas saved under the key. Must be called on the GL thread.
+     */
+    public TextureAtlas load(String key) {
+        return new TextureAtlas(getAtlasFile(key));
+    }
+    
+    /**
+     * Writes every page of the packer as a PNG and the region table as an
+     * atlas file, replacing whatever was cached before. The atlas file is
+     * written last, so an interrupted save is never mistaken for a cached
+     * atlas.
+     */
+    public void save(String key, PixmapPacker packer) {
+        clear();
+        
+        StringBuilder text = new StringBuilder();
+        Array<PixmapPacker.Page> pages = packer.getPages();
+        for (int i = 0; i < pages.size; i++) {
+            PixmapPacker.Page page = pages.get(i);
+            if (page.getRects().size == 0) {
+                continue;
+            }
+            
+            FileHandle pageFile = directory.child(key + "-" + i + ".png");
+            PixmapIO.writePNG(pageFile, page.getPixmap());
+            
+            text.append('\n');
+            text.append(pageFile.name()).append('\n');
+            text.append("size: ").append(packer.getPageWidth()).append(',').append(packer.getPageHeight()).append('\n');
+            text.append("format: ").append(packer.getPageFormat()).append('\n');
+            text.append("filter: Linear,Linear\n");
+            text.append("repeat: none\n");
+            for (String name : page.getRects().keys()) {
+                Rectangle rect = page.getRects().get(name);
+                int x = (int) rect.x;
+                int y = (int) rect.y;
+                int width = (int) rect.width;
+                int height = (int) rect.height;
+                text.append(name).append('\n');
+                text.append("  rotate: false\n");
+                text.append("  xy: ").append(x).append(", ").append(y).append('\n');
+                text.append("  size: ").append(width).append(", ").append(height).append('\n');
+                text.append("  orig: ").append(width).append(", ").append(height).append('\n');
+                text.append("  offset: 0, 0\n");
+                text.append("  index: -1\n");
+            }
+        }
+        
+        FileHandle temp = directory.child(key + ".atlas.tmp");
+        Writer writer = temp.writer(false, "UTF-8");
+        try {
+            writer.write(text.toString());
+        } catch (IOException e) {
+            throw new GdxRuntimeException("Error writing file: " + temp.path(), e);
+        } finally {
+            StreamUtils.closeQuietly(writer);
+        }
+        temp.moveTo(getAtlasFile(key));
+        Gdx.app.log(AtlasCache.class.getSimpleName(), "Cached atlas " + key);
+    }
+    
+    /**
+     * Deletes every cached atlas.
+     */
+    public void clear() {
+        if (directory.exists()) {
+            for (FileHandle file : directory.list()) {
+                file.delete();
+            }
+        }
+    }
+}
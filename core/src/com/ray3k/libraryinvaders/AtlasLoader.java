@@ -0,0 +1,365 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Raymond Buckley.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ray3k.libraryinvaders;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.g2d.PixmapPacker;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes the atlas images in parallel and packs them, all off the GL thread.
+ * A loader thread first looks the images up in the {@link AtlasCache}; on a
+ * miss it hands every file to a pool of decoder threads, which several loaders
+ * may share so they do not compete for the cores with a pool each, and
+ * packs the results in file order as they arrive, so the layout is the same
+ * however the decodes finish. Once loaded, only uploading the pages is left
+ * for the GL thread, after which {@link #save()} writes the packed atlas to
+ * the cache in the background.
+ */
+public class AtlasLoader implements Runnable {
+    private static final String TAG = AtlasLoader.class.getSimpleName();
+    private final Array<FileHandle> files;
+    private final PixmapPacker packer;
+    private final AtlasCache cache;
+    private final ExecutorService executor;
+    private int maxSize;
+    private final long[] decodeTimes;
+    private final AtomicInteger decoded;
+    private final AtomicInteger packed;
+    private final CountDownLatch loaded;
+    private Thread thread;
+    private volatile Throwable error;
+    private volatile String key;
+    private volatile boolean cached;
+    private volatile long bytes;
+    private volatile long loadTime;
+
+    /**
+     * Loads the files into the packer, decoding them on the executor. The
+     * executor is not shut down by the loader. The cache may be null to always
+     * decode and pack.
+     */
+    public AtlasLoader(Array<FileHandle> files, PixmapPacker packer, AtlasCache cache, ExecutorService executor) {
+        this.files = new Array<FileHandle>(files);
+        this.packer = packer;
+        this.cache = cache;
+        this.executor = executor;
+        decodeTimes = new long[files.size];
+        decoded = new AtomicInteger();
+        packed = new AtomicInteger();
+        loaded = new CountDownLatch(1);
+    }
+    
+    public int getMaxSize() {
+        return maxSize;
+    }
+    
+    /**
+     * Sets the largest width or height an image is packed at. Larger images
+     * are scaled down to fit on the decoder threads, keeping their aspect
+     * ratio. 0, the default, packs every image at full size. The cache key
+     * does not cover this, so each size needs its own cache.
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+    
+    public static int getDefaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+    
+    /**
+     * Returns a pool of daemon decoder threads for loaders to share.
+     */
+    public static ExecutorService newExecutor(int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "image-decoder");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+    
+    /**
+     * Starts loading on a new thread.
+     */
+    public void start() {
+        thread = new Thread(this, "atlas-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Loads on the calling thread.
+     */
+    @Override
+    public void run() {
+        try {
+            if (cache != null) {
+                key = cache.computeKey(files, packer);
+                if (cache.contains(key)) {
+                    cached = true;
+                    return;
+                }
+            }
+            
+            load();
+        } catch (Throwable e) {
+            error = e;
+        } finally {
+            loaded.countDown();
+        }
+    }
+    
+    /**
+     * Decodes and packs the images on the calling thread even though the
+     * cache had them, for when the cached atlas fails to load.
+     */
+    public void reload() {
+        finishLoading();
+        cached = false;
+        decoded.set(0);
+        packed.set(0);
+        try {
+            load();
+        } catch (Exception e) {
+            throw new GdxRuntimeException("Error loading atlas images.", e);
+        }
+    }
+    
+    /**
+     * Writes the packed atlas to the cache on a new thread. Texture uploads
+     * read the same page pixmaps, so this must wait until the atlas has been
+     * generated.
+     */
+    public void save() {
+        if (cache == null || cached || !update()) {
+            return;
+        }
+        
+        dispose();
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    cache.save(key, packer);
+                } catch (Throwable e) {
+                    Gdx.app.error(TAG, "Unable to cache atlas.", e);
+                }
+            }
+        }, "atlas-cache");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    private void load() throws InterruptedException, ExecutionException {
+        long start = System.nanoTime();
+        ArrayList<Future<Pixmap>> futures = new ArrayList<Future<Pixmap>>(files.size);
+        try {
+            for (int i = 0; i < files.size; i++) {
+                final int index = i;
+                futures.add(executor.submit(new Callable<Pixmap>() {
+                    @Override
+                    public Pixmap call() {
+                        long start = System.nanoTime();
+                        Pixmap pixmap = shrink(new Pixmap(files.get(index)));
+                        decodeTimes[index] = System.nanoTime() - start;
+                        decoded.incrementAndGet();
+                        return pixmap;
+                    }
+                }));
+            }
+            
+            long packTime = 0L;
+            for (int i = 0; i < futures.size(); i++) {
+                Pixmap pixmap = futures.get(i).get();
+                futures.set(i, null);
+                long packStart = System.nanoTime();
+                packer.pack(files.get(i).nameWithoutExtension(), pixmap);
+                packTime += System.nanoTime() - packStart;
+                pixmap.dispose();
+                packed.incrementAndGet();
+            }
+            
+            loadTime = System.nanoTime() - start;
+            report(packTime);
+        } finally {
+            //skip the decodes not started yet and release whatever was decoded
+            //before a failure
+            for (Future<Pixmap> future : futures) {
+                if (future != null && !future.cancel(false)) {
+                    try {
+                        future.get().dispose();
+                    } catch (Exception e) {
+                    }
+                }
+            }
+        }
+    }
+    
+    private Pixmap shrink(Pixmap pixmap) {
+        int width = pixmap.getWidth();
+        int height = pixmap.getHeight();
+        if (maxSize <= 0 || width <= maxSize && height <= maxSize) {
+            return pixmap;
+        }
+        
+        float scale = Math.min((float) maxSize / width, (float) maxSize / height);
+        Pixmap scaled = new Pixmap(Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)), pixmap.getFormat());
+        scaled.setBlending(Pixmap.Blending.None);
+        scaled.setFilter(Pixmap.Filter.BiLinear);
+        scaled.drawPixmap(pixmap, 0, 0, width, height, 0, 0, scaled.getWidth(), scaled.getHeight());
+        pixmap.dispose();
+        return scaled;
+    }
+    
+    /**
+     * Logs the decode time of each file, then a summary. The wall time
+     * includes waiting for the decodes of any loader sharing the executor, so
+     * the decode thread time is the measure of this loader's own work.
+     */
+    private void report(long packTime) {
+        long bytes = 0L;
+        long decodeTime = 0L;
+        for (int i = 0; i < files.size; i++) {
+            FileHandle file = files.get(i);
+            bytes += file.length();
+            decodeTime += decodeTimes[i];
+            Gdx.app.debug(TAG, String.format("Decoded %s (%d bytes) in %.2f ms", file.path(), file.length(), decodeTimes[i] / 1000000.0));
+        }
+        
+        this.bytes = bytes;
+        
+        Gdx.app.log(TAG, String.format("Loaded %d images (%.1f MB) in %.1f ms. Decoding took %.1f ms of thread time, %.1f MB/s per thread, packing %.1f ms.",
+                files.size, bytes / 1048576.0, loadTime / 1000000.0, decodeTime / 1000000.0, bytes / 1048576.0 / Math.max(decodeTime / 1000000000.0, 1e-9), packTime / 1000000.0));
+    }
+    
+    /**
+     * Returns true once every image has been packed or the cache hit. Throws
+     * if loading failed.
+     */
+    public boolean update() {
+        if (error != null) {
+            throw new GdxRuntimeException("Error loading atlas images.", error);
+        }
+        return loaded.getCount() == 0;
+    }
+    
+    /**
+     * Blocks until {@link #update()} returns true.
+     */
+    public void finishLoading() {
+        try {
+            loaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GdxRuntimeException(e);
+        }
+        update();
+    }
+    
+    /**
+     * Returns the fraction of images decoded and packed, from 0 to 1.
+     */
+    public float getProgress() {
+        if (files.size == 0 || cached) {
+            return loaded.getCount() == 0 ? 1.0f : 0.0f;
+        }
+        return (decoded.get() + packed.get()) / (2.0f * files.size);
+    }
+    
+    /**
+     * Returns true if the cache holds an atlas of these exact images, in which
+     * case nothing was decoded or packed.
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * Returns the cache key of the images, once loaded.
+     */
+    public String getKey() {
+        return key;
+    }
+    
+    /**
+     * Returns the number of images the loader decodes.
+     */
+    public int getImageCount() {
+        return files.size;
+    }
+    
+    /**
+     * Returns the size of the decoded files in bytes, or 0 if nothing was
+     * decoded.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+    
+    /**
+     * Returns the nanoseconds from submitting the first decode to packing the
+     * last image, or 0 if nothing was decoded.
+     */
+    public long getLoadTime() {
+        return loadTime;
+    }
+    
+    /**
+     * Returns the time taken to decode the file at the index, in nanoseconds.
+     */
+    public long getDecodeTime(int index) {
+        return decodeTimes[index];
+    }
+    
+    /**
+     * Waits for loading and saving to finish, so the packer can be disposed.
+     */
+    public void dispose() {
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+}
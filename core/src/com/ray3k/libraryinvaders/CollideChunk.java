@@ -0,0 +1,66 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Raymond Buckley.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ray3k.libraryinvaders;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import java.util.concurrent.Callable;
+
+/**
+ * A contiguous range of entities whose collision tests run on a worker
+ * thread. Overlaps found are kept here, as pairs with their time of impact,
+ * until the main thread reports them to the contact manager.
+ */
+class CollideChunk implements Callable<Object> {
+    private final EntityManager manager;
+    final Array<Entity> candidates;
+    final Rectangle bounds;
+    final Array<Entity> pairs;
+    final FloatArray times;
+    int pairTests;
+    int start;
+    int end;
+    
+    CollideChunk(EntityManager manager) {
+        this.manager = manager;
+        candidates = new Array<Entity>();
+        bounds = new Rectangle();
+        pairs = new Array<Entity>();
+        times = new FloatArray();
+    }
+
+    @Override
+    public Object call() throws Exception {
+        manager.runChunk(this);
+        return null;
+    }
+    
+    void clear() {
+        pairs.clear();
+        times.clear();
+        pairTests = 0;
+    }
+}
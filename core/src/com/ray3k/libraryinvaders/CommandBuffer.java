@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Raymond Buckley.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ray3k.libraryinvaders;
+
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Records structural changes to the entity list made during a tick so the
+ * list never changes while it is being walked. Spawns are appended in one go
+ * and destroyed entities are swept out in a single compacting pass.
+ */
+class CommandBuffer {
+    private final Array<Entity> spawns;
+    private int despawns;
+    
+    CommandBuffer() {
+        spawns = new Array<Entity>();
+    }
+    
+    void spawn(Entity entity) {
+        spawns.add(entity);
+    }
+    
+    /**
+     * Records that an entity has been destroyed and needs to be swept out.
+     */
+    void despawn() {
+        despawns++;
+    }
+    
+    boolean hasSpawns() {
+        return spawns.size > 0;
+    }
+    
+    Array<Entity> getSpawns() {
+        return spawns;
+    }
+    
+    /**
+     * Appends the recorded spawns to entities in the order they were made.
+     */
+    void applySpawns(Array<Entity> entities) {
+        entities.addAll(spawns);
+        spawns.clear();
+    }
+    
+    /**
+     * Forgets the recorded spawns and despawns.
+     */
+    void clear() {
+        spawns.clear();
+        despawns = 0;
+    }
+    
+    /**
+     * Removes destroyed entities while keeping the order of the rest, handing
+     * each one to the manager. Does nothing if nothing was destroyed.
+     */
+    void applyDespawns(Array<Entity> entities, EntityManager manager) {
+        if (despawns == 0) {
+            return;
+        }
+        
+        int write = 0;
+        for (int i = 0; i < entities.size; i++) {
+            Entity entity = entities.get(i);
+            if (entity.isDestroyed()) {
+                manager.removeEntity(entity);
+            } else {
+                entities.set(write++, entity);
+            }
+        }
+        entities.truncate(write);
+        despawns = 0;
+    }
+}
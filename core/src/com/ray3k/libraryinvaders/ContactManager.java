@@ -0,0 +1,346 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Raymond Buckley.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ray3k.libraryinvaders;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import com.badlogic.gdx.utils.Pool;
+
+/**
+ * Tracks overlapping entity pairs from one tick to the next and turns them into
+ * begin, stay and end events for the registered handlers.
+ */
+public class ContactManager {
+    private final Array<Contact> contacts;
+    private final Array<Contact> touched;
+    private final Pool<Contact> contactPool;
+    private final ObjectIntMap<Class<?>> types;
+    private ContactHandler<?, ?>[][] handlers;
+    private int tick;
+    private int pairTests;
+    private int beginCount;
+    private int endCount;
+    
+    public interface ContactHandler<A extends Entity, B extends Entity> {
+        public void onContactBegin(A entity, B other);
+        public void onContactStay(A entity, B other);
+        public void onContactEnd(A entity, B other);
+    }
+    
+    public static abstract class ContactAdapter<A extends Entity, B extends Entity> implements ContactHandler<A, B> {
+        @Override
+        public void onContactBegin(A entity, B other) {
+        }
+
+        @Override
+        public void onContactStay(A entity, B other) {
+        }
+
+        @Override
+        public void onContactEnd(A entity, B other) {
+        }
+    }
+    
+    public static class Contact implements Pool.Poolable {
+        private Entity entityA;
+        private Entity entityB;
+        private int tick;
+        private boolean begun;
+        private float time;
+
+        public Entity getEntityA() {
+            return entityA;
+        }
+
+        public Entity getEntityB() {
+            return entityB;
+        }
+
+        /**
+         * Fraction of the last tick at which the pair first touched. Always 0
+         * unless one of the entities uses continuous collision.
+         */
+        public float getTime() {
+            return time;
+        }
+
+        @Override
+        public void reset() {
+            entityA = null;
+            entityB = null;
+            begun = false;
+        }
+    }
+    
+    public ContactManager() {
+        contacts = new Array<Contact>(false, 16);
+        touched = new Array<Contact>(false, 16);
+        contactPool = new Pool<Contact>() {
+            @Override
+            protected Contact newObject() {
+                return new Contact();
+            }
+        };
+        types = new ObjectIntMap<Class<?>>();
+        handlers = new ContactHandler<?, ?>[0][0];
+    }
+    
+    /**
+     * Registers the handler receiving contact events between an entity of type
+     * A and an entity of type B. Pairs without a handler in either order fall
+     * back to {@link Entity#collision(Entity)} on both entities every tick the
+     * pair overlaps.
+     */
+    public <A extends Entity, B extends Entity> void addContactHandler(Class<A> typeA, Class<B> typeB, ContactHandler<A, B> handler) {
+        int a = getType(typeA);
+        int b = getType(typeB);
+        handlers[a][b] = handler;
+    }
+    
+    public <A extends Entity, B extends Entity> void removeContactHandler(Class<A> typeA, Class<B> typeB) {
+        handlers[getType(typeA)][getType(typeB)] = null;
+    }
+    
+    /**
+     * Returns the index of the type, or -1 if no entity or handler has used it
+     * yet. Unlike {@link #getType(Class)} this never registers the type.
+     */
+    int findType(Class<?> type) {
+        return types.get(type, -1);
+    }
+    
+    int getType(Class<?> type) {
+        int index = types.get(type, -1);
+        if (index == -1) {
+            index = types.size;
+            types.put(type, index);
+            
+            ContactHandler<?, ?>[][] newHandlers = new ContactHandler<?, ?>[index + 1][index + 1];
+            for (int i = 0; i < handlers.length; i++) {
+                System.arraycopy(handlers[i], 0, newHandlers[i], 0, handlers[i].length);
+            }
+            handlers = newHandlers;
+        }
+        return index;
+    }
+    
+    /**
+     * Starts collecting the overlapping pairs of a new tick.
+     */
+    public void begin() {
+        tick++;
+        pairTests = 0;
+        beginCount = 0;
+        endCount = 0;
+        touched.clear();
+    }
+    
+    void countPairTest() {
+        pairTests++;
+    }
+    
+    void countPairTests(int count) {
+        pairTests += count;
+    }
+    
+    /**
+     * Records that the two entities overlap this tick, first touching at the
+     * given fraction of the tick. Each unordered pair must only be reported
+     * once per tick.
+     */
+    public void addOverlap(Entity entityA, Entity entityB, float time) {
+        Entity owner = getOwner(entityA, entityB);
+        Entity other = owner == entityA ? entityB : entityA;
+        Contact contact = null;
+        for (int i = 0; i < owner.contacts.size; i++) {
+            Contact owned = owner.contacts.get(i);
+            if (owned.entityA == other || owned.entityB == other) {
+                contact = owned;
+                break;
+            }
+        }
+        
+        if (contact == null) {
+            contact = contactPool.obtain();
+            contact.entityA = entityA;
+            contact.entityB = entityB;
+            owner.contacts.add(contact);
+            contacts.add(contact);
+        }
+        contact.tick = tick;
+        contact.time = time;
+        touched.add(contact);
+    }
+    
+    /**
+     * Sends begin and stay events ordered by time of impact, then by the order
+     * the overlaps were added, followed by end events for the pairs that
+     * stopped overlapping. Entities destroyed by an earlier event in the same
+     * tick get no further begin or stay events, so a fast mover only hits the
+     * first thing in its path.
+     */
+    public void dispatch() {
+        for (int i = 1; i < touched.size; i++) {
+            Contact contact = touched.get(i);
+            int j = i - 1;
+            while (j >= 0 && touched.get(j).time > contact.time) {
+                touched.set(j + 1, touched.get(j));
+                j--;
+            }
+            touched.set(j + 1, contact);
+        }
+        
+        for (int i = 0; i < touched.size; i++) {
+            Contact contact = touched.get(i);
+            if (contact.entityA.isDestroyed() || contact.entityB.isDestroyed()) {
+                continue;
+            }
+            
+            if (!contact.begun) {
+                contact.begun = true;
+                beginCount++;
+                dispatchBegin(contact.entityA, contact.entityB);
+            } else {
+                dispatchStay(contact.entityA, contact.entityB);
+            }
+        }
+        touched.clear();
+        
+        int write = 0;
+        for (int i = 0; i < contacts.size; i++) {
+            Contact contact = contacts.get(i);
+            if (contact.tick != tick) {
+                getOwner(contact.entityA, contact.entityB).contacts.removeValue(contact, true);
+                if (contact.begun) {
+                    endCount++;
+                    dispatchEnd(contact.entityA, contact.entityB);
+                }
+                contactPool.free(contact);
+            } else {
+                contacts.set(write++, contact);
+            }
+        }
+        contacts.truncate(write);
+    }
+    
+    public void clear() {
+        for (int i = 0; i < contacts.size; i++) {
+            Contact contact = contacts.get(i);
+            contact.entityA.contacts.clear();
+            contact.entityB.contacts.clear();
+        }
+        contactPool.freeAll(contacts);
+        contacts.clear();
+        touched.clear();
+    }
+    
+    private void dispatchBegin(Entity entityA, Entity entityB) {
+        ContactHandler<Entity, Entity> handler = getHandler(entityA, entityB);
+        if (handler != null) {
+            handler.onContactBegin(entityA, entityB);
+        } else {
+            handler = getHandler(entityB, entityA);
+            if (handler != null) {
+                handler.onContactBegin(entityB, entityA);
+            } else {
+                legacyCollision(entityA, entityB);
+            }
+        }
+    }
+    
+    private void dispatchStay(Entity entityA, Entity entityB) {
+        ContactHandler<Entity, Entity> handler = getHandler(entityA, entityB);
+        if (handler != null) {
+            handler.onContactStay(entityA, entityB);
+        } else {
+            handler = getHandler(entityB, entityA);
+            if (handler != null) {
+                handler.onContactStay(entityB, entityA);
+            } else {
+                legacyCollision(entityA, entityB);
+            }
+        }
+    }
+    
+    private void dispatchEnd(Entity entityA, Entity entityB) {
+        ContactHandler<Entity, Entity> handler = getHandler(entityA, entityB);
+        if (handler != null) {
+            handler.onContactEnd(entityA, entityB);
+        } else {
+            handler = getHandler(entityB, entityA);
+            if (handler != null) {
+                handler.onContactEnd(entityB, entityA);
+            }
+        }
+    }
+    
+    /**
+     * Returns the handler registered for the types of the two entities in this
+     * order. The handler was registered for exactly these types, so passing
+     * the entities in the same order is safe.
+     */
+    @SuppressWarnings("unchecked")
+    private ContactHandler<Entity, Entity> getHandler(Entity entityA, Entity entityB) {
+        return (ContactHandler<Entity, Entity>) handlers[entityA.collisionType][entityB.collisionType];
+    }
+    
+    private void legacyCollision(Entity entityA, Entity entityB) {
+        entityA.collision(entityB);
+        if (!entityA.isDestroyed() && !entityB.isDestroyed()) {
+            entityB.collision(entityA);
+        }
+    }
+    
+    /**
+     * Contacts are kept on the entity of the pair that was added first, rather
+     * than in a map keyed by ids that keep growing.
+     */
+    private static Entity getOwner(Entity entityA, Entity entityB) {
+        return entityA.id < entityB.id ? entityA : entityB;
+    }
+
+    /**
+     * Number of pairs that passed the broadphase and mask filter and had
+     * their boxes tested this tick.
+     */
+    public int getPairTests() {
+        return pairTests;
+    }
+
+    /**
+     * Number of pairs overlapping as of the last tick.
+     */
+    public int getContactCount() {
+        return contacts.size;
+    }
+
+    public int getBeginCount() {
+        return beginCount;
+    }
+
+    public int getEndCount() {
+        return endCount;
+    }
+}
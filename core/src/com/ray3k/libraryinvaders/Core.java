@@ -2,18 +2,20 @@ package com.ray3k.libraryinvaders;
 
 import com.badlogic.gdx.ApplicationAdapter;
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input.Keys;
 import com.badlogic.gdx.assets.AssetManager;
 import com.badlogic.gdx.assets.loaders.resolvers.LocalFileHandleResolver;
 import com.badlogic.gdx.audio.Sound;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.PixmapPacker;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g2d.TextureAtlas;
 import com.badlogic.gdx.scenes.scene2d.ui.Skin;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.badlogic.gdx.utils.ObjectMap;
-import com.badlogic.gdx.utils.TimeUtils;
 import com.ray3k.libraryinvaders.states.GameOverState;
 import com.ray3k.libraryinvaders.states.GameState;
 import com.ray3k.libraryinvaders.states.LoadingState;
@@ -23,12 +25,32 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
 import javax.swing.JOptionPane;
 
 public class Core extends ApplicationAdapter {
     public final static String VERSION = "1";
     public final static String DATA_PATH = "library_invader_data";
-    private final static long MS_PER_UPDATE = 10;
+    public final static String CHARACTERS_PATH = DATA_PATH + "/characters";
+    /**
+     * Largest width or height of a character picker thumbnail, in pixels.
+     */
+    public final static int THUMBNAIL_SIZE = 64;
+    public final static long DEFAULT_MS_PER_UPDATE = 10;
+    public final static int DEFAULT_MAX_STEPS_PER_FRAME = 5;
+    /**
+     * Size of the playfield in world units. The simulation uses this instead
+     * of the window size so that it plays the same in any window, or none.
+     */
+    public final static float WORLD_WIDTH = 800.0f;
+    public final static float WORLD_HEIGHT = 650.0f;
+    private long msPerUpdate = DEFAULT_MS_PER_UPDATE;
+    private int maxStepsPerFrame = DEFAULT_MAX_STEPS_PER_FRAME;
+    private long droppedTime;
+    private long droppedSteps;
+    private boolean simulationThreaded;
+    private SimulationThread simulationThread;
     private AssetManager assetManager;
     private StateManager stateManager;
     private SpriteBatch spriteBatch;
@@ -37,6 +59,19 @@ public class Core extends ApplicationAdapter {
     private long previous;
     private long lag;
     private TextureAtlas atlas;
+    private Array<FileHandle> imageFiles;
+    private AtlasCache atlasCache;
+    private boolean atlasCacheEnabled = true;
+    private String atlasKey;
+    private AtlasLoader atlasLoader;
+    private PixmapPacker thumbnailPacker;
+    private TextureAtlas thumbnailAtlas;
+    private Array<FileHandle> characterFiles;
+    private AtlasCache thumbnailCache;
+    private AtlasLoader thumbnailLoader;
+    private ExecutorService decoderExecutor;
+    private FileHandle replayFile;
+    private final FrameProfiler profiler = new FrameProfiler();
 
     @Override
     public void create() {
@@ -46,8 +81,14 @@ public class Core extends ApplicationAdapter {
             createLocalFiles();
 
             loadAssets();
+            
+            if (simulationThreaded) {
+                stateManager.setThreaded(true);
+                simulationThread = new SimulationThread(this);
+                simulationThread.start();
+            }
 
-            previous = TimeUtils.millis();
+            previous = System.nanoTime();
             lag = 0;
 
             stateManager.loadState("loading");
@@ -87,31 +128,65 @@ public class Core extends ApplicationAdapter {
             imagePacks.put(DATA_PATH + "/" + name, new Array<String>());
         }
         
+        GameState gameState = new GameState(this);
+        gameState.setRecordFile(Gdx.files.local(DATA_PATH + "/replays/last.replay"));
+        gameState.setReplayFile(replayFile);
+        
         stateManager = new StateManager(this);
-        stateManager.addState("loading", new LoadingState("menu", this));
+        stateManager.addState("loading", new LoadingState(replayFile == null ? "menu" : "game", this));
         stateManager.addState("menu", new MenuState(this));
-        stateManager.addState("game", new GameState(this));
+        stateManager.addState("game", gameState);
         stateManager.addState("game-over", new GameOverState(this));
         
         spriteBatch = new SpriteBatch();
         
-        pixmapPacker = new PixmapPacker(1024, 1024, Pixmap.Format.RGBA8888, 5, true, new PixmapPacker.GuillotineStrategy());
+        pixmapPacker = newPixmapPacker();
+        
+        imageFiles = new Array<FileHandle>();
+        atlasCache = new AtlasCache(Gdx.files.local(DATA_PATH + "/.cache/atlas"));
+        
+        thumbnailPacker = new PixmapPacker(512, 512, Pixmap.Format.RGBA8888, 2, true, new PixmapPacker.GuillotineStrategy());
+        characterFiles = new Array<FileHandle>();
+        thumbnailCache = new AtlasCache(Gdx.files.local(DATA_PATH + "/.cache/thumbnails-" + THUMBNAIL_SIZE));
     }
     
     @Override
     public void render() {
         try {
-            long current = TimeUtils.millis();
+            long current = System.nanoTime();
             long elapsed = current - previous;
             previous = current;
             lag += elapsed;
 
-            while (lag >= MS_PER_UPDATE) {
-                stateManager.act(MS_PER_UPDATE / 1000.0f);
-                lag -= MS_PER_UPDATE;
+            long nanosPerUpdate = msPerUpdate * 1000000L;
+            int steps = 0;
+            long time = profiler.start();
+            while (lag >= nanosPerUpdate) {
+                //past the cap, drop whole ticks instead of falling further behind
+                if (steps == maxStepsPerFrame) {
+                    long dropped = lag / nanosPerUpdate;
+                    addDropped(dropped, dropped * nanosPerUpdate);
+                    lag -= dropped * nanosPerUpdate;
+                    break;
+                }
+                
+                stateManager.act(msPerUpdate / 1000.0f);
+                lag -= nanosPerUpdate;
+                steps++;
             }
+            profiler.stop(FrameProfiler.UPDATE, time);
 
-            stateManager.draw(spriteBatch, lag / MS_PER_UPDATE);
+            stateManager.draw(spriteBatch, (float) lag / nanosPerUpdate);
+            
+            profiler.draw(spriteBatch);
+            if (simulationThread != null) {
+                simulationThread.getSoundQueue().play();
+            }
+            
+            profiler.endFrame(steps, getDroppedSteps());
+            if (Gdx.input.isKeyJustPressed(Keys.F3)) {
+                profiler.setEnabled(!profiler.isEnabled());
+            }
         } catch (Exception e) {
             e.printStackTrace();
             
@@ -142,12 +217,27 @@ public class Core extends ApplicationAdapter {
 
     @Override
     public void dispose() {
+        if (simulationThread != null) {
+            simulationThread.stop();
+        }
         assetManager.dispose();
         stateManager.dispose();
+        if (atlasLoader != null) {
+            atlasLoader.dispose();
+        }
+        if (thumbnailLoader != null) {
+            thumbnailLoader.dispose();
+        }
+        shutdownDecoders();
         pixmapPacker.dispose();
+        thumbnailPacker.dispose();
+        profiler.dispose();
         if (atlas != null) {
             atlas.dispose();
         }
+        if (thumbnailAtlas != null) {
+            thumbnailAtlas.dispose();
+        }
     }
     
     public void createLocalFiles() {
@@ -203,15 +293,41 @@ public class Core extends ApplicationAdapter {
         
         assetManager.load(DATA_PATH + "/skin/skin.json", Skin.class);
         
+        imageFiles.clear();
+        characterFiles.clear();
         for (String directory : imagePacks.keys()) {
             FileHandle folder = Gdx.files.local(directory);
+            //only one character is played per game, so they stay out of the atlas
+            Array<FileHandle> files = directory.equals(CHARACTERS_PATH) ? characterFiles : imageFiles;
             for (FileHandle file : folder.list()) {
-                assetManager.load(file.path(), Pixmap.class);
+                files.add(file);
                 imagePacks.get(directory).add(file.nameWithoutExtension());
             }
+            //directory listing order varies, and seeded games pick images by index
+            imagePacks.get(directory).sort();
         }
+        imageFiles.add(Gdx.files.local(DATA_PATH + "/gfx/white.png"));
+        Comparator<FileHandle> comparator = new Comparator<FileHandle>() {
+            @Override
+            public int compare(FileHandle o1, FileHandle o2) {
+                return o1.path().compareTo(o2.path());
+            }
+        };
+        imageFiles.sort(comparator);
+        characterFiles.sort(comparator);
         
-        assetManager.load(DATA_PATH + "/gfx/white.png", Pixmap.class);
+        //images are decoded and packed off the GL thread while sounds load, with
+        //both loaders sharing one decoder per core
+        if (decoderExecutor == null) {
+            decoderExecutor = AtlasLoader.newExecutor(AtlasLoader.getDefaultThreads());
+        }
+        startAtlasLoader(atlasCacheEnabled ? atlasCache : null);
+        if (thumbnailLoader != null) {
+            thumbnailLoader.dispose();
+        }
+        thumbnailLoader = new AtlasLoader(characterFiles, thumbnailPacker, atlasCacheEnabled ? thumbnailCache : null, decoderExecutor);
+        thumbnailLoader.setMaxSize(THUMBNAIL_SIZE);
+        thumbnailLoader.start();
         
         assetManager.load(DATA_PATH + "/sfx/enemy-hit.wav", Sound.class);
         assetManager.load(DATA_PATH + "/sfx/enemy-shot.wav", Sound.class);
@@ -222,9 +338,78 @@ public class Core extends ApplicationAdapter {
         assetManager.load(DATA_PATH + "/sfx/ufo-hit.wav", Sound.class);
     }
 
+    private void startAtlasLoader(AtlasCache cache) {
+        if (atlasLoader != null) {
+            atlasLoader.dispose();
+        }
+        atlasLoader = new AtlasLoader(imageFiles, pixmapPacker, cache, decoderExecutor);
+        atlasLoader.start();
+    }
+    
+    /**
+     * Returns true once the atlas and the character thumbnails are ready for
+     * {@link #packPixmaps()}.
+     */
+    public boolean updateAtlasLoaders() {
+        return atlasLoader.update() && thumbnailLoader.update();
+    }
+    
+    public float getAtlasProgress() {
+        return (atlasLoader.getProgress() + thumbnailLoader.getProgress()) / 2.0f;
+    }
+    
+    /**
+     * Waits for the atlas loaders and makes their atlases current. Each atlas
+     * is loaded from the cache if its images have not changed since it was
+     * saved, otherwise the packed pages are uploaded and then cached.
+     */
+    public void packPixmaps() {
+        atlas = uploadAtlas(atlasLoader, atlasCache, pixmapPacker);
+        atlasKey = atlasLoader.getKey();
+        thumbnailAtlas = uploadAtlas(thumbnailLoader, thumbnailCache, thumbnailPacker);
+        
+        long bytes = atlasLoader.getBytes() + thumbnailLoader.getBytes();
+        if (bytes > 0) {
+            int count = (atlasLoader.getBytes() > 0 ? atlasLoader.getImageCount() : 0) + (thumbnailLoader.getBytes() > 0 ? thumbnailLoader.getImageCount() : 0);
+            double seconds = Math.max(atlasLoader.getLoadTime(), thumbnailLoader.getLoadTime()) / 1000000000.0;
+            Gdx.app.log(Core.class.getSimpleName(), String.format("Decoded %d images (%.1f MB) in %.1f ms on %d threads: %.0f images/s, %.1f MB/s",
+                    count, bytes / 1048576.0, seconds * 1000.0, AtlasLoader.getDefaultThreads(), count / seconds, bytes / 1048576.0 / seconds));
+        }
+        shutdownDecoders();
+    }
+    
+    private void shutdownDecoders() {
+        if (decoderExecutor != null) {
+            decoderExecutor.shutdown();
+            decoderExecutor = null;
+        }
+    }
+    
+    private static TextureAtlas uploadAtlas(AtlasLoader loader, AtlasCache cache, PixmapPacker packer) {
+        loader.finishLoading();
+        if (loader.isCached()) {
+            try {
+                return cache.load(loader.getKey());
+            } catch (GdxRuntimeException e) {
+                Gdx.app.error(Core.class.getName(), "Unable to load cached atlas, packing images instead.", e);
+                cache.clear();
+                loader.reload();
+            }
+        }
+        
+        TextureAtlas atlas = packer.generateTextureAtlas(Texture.TextureFilter.Linear, Texture.TextureFilter.Linear, false);
+        loader.save();
+        return atlas;
+    }
+    
+    public static PixmapPacker newPixmapPacker() {
+        return new PixmapPacker(1024, 1024, Pixmap.Format.RGBA8888, 5, true, new PixmapPacker.GuillotineStrategy());
+    }
+
     @Override
     public void resume() {
-        
+        //time spent paused is not simulated
+        previous = System.nanoTime();
     }
 
     @Override
@@ -253,6 +438,165 @@ public class Core extends ApplicationAdapter {
         return imagePacks;
     }
 
+    public long getMsPerUpdate() {
+        return msPerUpdate;
+    }
+
+    /**
+     * Sets the length of a simulation tick. Bullets use continuous collision,
+     * so ticks as long as 33 ms (30 Hz) still register every hit.
+     */
+    public void setMsPerUpdate(long msPerUpdate) {
+        this.msPerUpdate = msPerUpdate;
+    }
+
+    public int getMaxStepsPerFrame() {
+        return maxStepsPerFrame;
+    }
+
+    /**
+     * Sets the most ticks run in one frame to catch up with real time. Time
+     * beyond that is dropped and the game runs slower than real time rather
+     * than spending ever longer frames catching up.
+     */
+    public void setMaxStepsPerFrame(int maxStepsPerFrame) {
+        this.maxStepsPerFrame = maxStepsPerFrame;
+    }
+
+    /**
+     * Returns the nanoseconds of real time skipped because a frame needed more
+     * than {@link #getMaxStepsPerFrame()} ticks to catch up.
+     */
+    public synchronized long getDroppedTime() {
+        return droppedTime;
+    }
+
+    /**
+     * Returns the number of ticks skipped along with the dropped time.
+     */
+    public synchronized long getDroppedSteps() {
+        return droppedSteps;
+    }
+    
+    synchronized void addDropped(long steps, long time) {
+        droppedSteps += steps;
+        droppedTime += time;
+    }
+
+    public boolean isSimulationThreaded() {
+        return simulationThreaded;
+    }
+
+    /**
+     * Runs the simulation of the game on its own thread instead of between
+     * frames. Must be called before {@link #create()}.
+     */
+    public void setSimulationThreaded(boolean simulationThreaded) {
+        this.simulationThreaded = simulationThreaded;
+    }
+
+    /**
+     * Returns the thread running the game simulation, or null if it runs on
+     * the render thread.
+     */
+    public SimulationThread getSimulationThread() {
+        return simulationThread;
+    }
+
+    /**
+     * Returns the profiler timing each frame's phases. F3 toggles it along
+     * with its overlay.
+     */
+    public FrameProfiler getProfiler() {
+        return profiler;
+    }
+
+    public FileHandle getReplayFile() {
+        return replayFile;
+    }
+
+    /**
+     * Sets a replay to play back once loading finishes, instead of showing
+     * the menu. Must be called before {@link #create()}.
+     */
+    public void setReplayFile(FileHandle replayFile) {
+        this.replayFile = replayFile;
+    }
+
+    public boolean isAtlasCacheEnabled() {
+        return atlasCacheEnabled;
+    }
+
+    /**
+     * Sets whether {@link #packPixmaps()} may load and save the packed atlas
+     * under library_invader_data/.cache. Must be set before
+     * {@link #loadAssets()}.
+     */
+    public void setAtlasCacheEnabled(boolean atlasCacheEnabled) {
+        this.atlasCacheEnabled = atlasCacheEnabled;
+    }
+
+    /**
+     * Returns every image packed into the atlas, sorted by path.
+     */
+    public Array<FileHandle> getImageFiles() {
+        return imageFiles;
+    }
+
+    /**
+     * Returns the loader decoding and packing the images, once
+     * {@link #loadAssets()} has started it.
+     */
+    public AtlasLoader getAtlasLoader() {
+        return atlasLoader;
+    }
+
+    /**
+     * Returns the character images, sorted by path. Their thumbnails are in
+     * {@link #getThumbnailAtlas()} and the full images are loaded by the game
+     * for the selected character only.
+     */
+    public Array<FileHandle> getCharacterFiles() {
+        return characterFiles;
+    }
+    
+    /**
+     * Returns the image of the named character, whatever its extension, or
+     * null if there is no such character.
+     */
+    public FileHandle getCharacterFile(String name) {
+        for (FileHandle file : characterFiles) {
+            if (file.nameWithoutExtension().equals(name)) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    public AtlasLoader getThumbnailLoader() {
+        return thumbnailLoader;
+    }
+
+    /**
+     * Returns the character images scaled to fit {@link #THUMBNAIL_SIZE}, for
+     * the character picker.
+     */
+    public TextureAtlas getThumbnailAtlas() {
+        return thumbnailAtlas;
+    }
+
+    public AtlasCache getAtlasCache() {
+        return atlasCache;
+    }
+
+    /**
+     * Returns the key of the current images in the atlas cache, or null if
+     * the cache is disabled.
+     */
+    public String getAtlasKey() {
+        return atlasKey;
+    }
+
     public TextureAtlas getAtlas() {
         return atlas;
     }
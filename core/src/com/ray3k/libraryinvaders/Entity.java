@@ -25,11 +25,16 @@ package com.ray3k.libraryinvaders;
 
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.RandomXS128;
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Pool;
 
-public abstract class Entity {
-    private static final Vector2 temp = new Vector2();
+public abstract class Entity implements Pool.Poolable {
+    public static final int DEFAULT_CATEGORY = 1;
+    public static final int DEFAULT_MASK = -1;
     private final Vector2 position;
     private final Vector2 speed;
     private final Vector2 offset;
@@ -39,10 +44,36 @@ public abstract class Entity {
     private boolean destroyed;
     private final EntityManager manager;
     private final Core core;
+    private final RandomXS128 random;
     private final Vector2 gravity;
     private int depth;
     private final Rectangle collisionBox;
     private boolean checkingCollisions;
+    private int collisionCategory;
+    private int collisionMask;
+    private boolean continuousCollision;
+    int collisionType;
+    int typeIndex;
+    boolean renderQueued;
+    int id;
+    int order;
+    boolean inBroadphase;
+    int cellMinX;
+    int cellMinY;
+    int cellMaxX;
+    int cellMaxY;
+    int queryMark;
+    final Array<ContactManager.Contact> contacts;
+    private float sweepX;
+    private float sweepY;
+    private float previousX;
+    private float previousY;
+    private float previousRotation;
+    private boolean previousSaved;
+    EntityPool<?> pool;
+    EntityStore store;
+    int slot;
+    long handle;
 
     public Entity(EntityManager manager, Core core) {
         position = new Vector2();
@@ -57,14 +88,22 @@ public abstract class Entity {
         depth = 0;
         destroyed = false;
         this.manager = manager;
-        manager.addEntity(this);
         this.core = core;
+        random = new RandomXS128(0);
         collisionBox = new Rectangle();
+        contacts = new Array<ContactManager.Contact>(false, 4);
         checkingCollisions = false;
-        
-        create();
+        collisionCategory = DEFAULT_CATEGORY;
+        collisionMask = DEFAULT_MASK;
+        continuousCollision = false;
+        slot = -1;
+        handle = EntityManager.NULL_HANDLE;
     }
     
+    /**
+     * Called when the entity is added through {@link EntityManager#obtain(Class)},
+     * after the subclass constructor has run.
+     */
     public abstract void create();
     
     public abstract void act(float delta);
@@ -73,31 +112,196 @@ public abstract class Entity {
     
     public abstract void draw(SpriteBatch spriteBatch, float delta);
     
+    /**
+     * Adds what {@link #draw(SpriteBatch, float)} draws to a snapshot drawn on
+     * another thread. The texture region is added by the caller, so only
+     * entities with custom draw code need to override this.
+     */
+    public void snapshot(RenderSnapshot snapshot) {
+    }
+    
     public abstract void destroy();
     
     public abstract void collision(Entity other);
     
+    /**
+     * Called when the entity is released back to its pool. Subclasses holding
+     * references to other objects should clear them and call super.reset().
+     */
+    @Override
+    public void reset() {
+        position.setZero();
+        speed.setZero();
+        offset.setZero();
+        scale.set(1.0f, 1.0f);
+        gravity.setZero();
+        rotation = 0.0f;
+        textureRegion = null;
+        destroyed = false;
+        depth = 0;
+        collisionBox.set(0.0f, 0.0f, 0.0f, 0.0f);
+        checkingCollisions = false;
+        collisionCategory = DEFAULT_CATEGORY;
+        collisionMask = DEFAULT_MASK;
+        continuousCollision = false;
+        previousSaved = false;
+    }
+    
     public void dispose() {
         if (!destroyed) {
+            if (manager.defer(UpdateChunk.DISPOSE, this)) {
+                return;
+            }
+            
             destroyed = true;
+            manager.despawn();
+            if (store != null) {
+                store.kill(slot);
+            }
             destroy();
         }
     }
 
+    void copyTo(EntityStore store, int slot) {
+        store.x[slot] = position.x;
+        store.y[slot] = position.y;
+        store.xSpeed[slot] = speed.x;
+        store.ySpeed[slot] = speed.y;
+        store.xGravity[slot] = gravity.x;
+        store.yGravity[slot] = gravity.y;
+        store.boxX[slot] = collisionBox.x;
+        store.boxY[slot] = collisionBox.y;
+        store.sweepX[slot] = sweepX;
+        store.sweepY[slot] = sweepY;
+    }
+    
+    void copyFrom(EntityStore store, int slot) {
+        position.set(store.x[slot], store.y[slot]);
+        speed.set(store.xSpeed[slot], store.ySpeed[slot]);
+        gravity.set(store.xGravity[slot], store.yGravity[slot]);
+        collisionBox.setPosition(store.boxX[slot], store.boxY[slot]);
+        sweepX = store.sweepX[slot];
+        sweepY = store.sweepY[slot];
+    }
+    
+    /**
+     * Records the current position as where the entity started this tick, then
+     * moves it by its gravity and speed and places the collision box there.
+     */
+    void integrate(float delta) {
+        if (store != null) {
+            store.sweepX[slot] = store.x[slot];
+            store.sweepY[slot] = store.y[slot];
+        } else {
+            sweepX = position.x;
+            sweepY = position.y;
+        }
+        
+        addXspeed(getGravityX() * delta);
+        addYspeed(getGravityY() * delta);
+        
+        addX(getXspeed() * delta);
+        addY(getYspeed() * delta);
+        
+        if (store != null) {
+            store.boxX[slot] = store.x[slot];
+            store.boxY[slot] = store.y[slot];
+        } else {
+            collisionBox.setPosition(position.x, position.y);
+        }
+    }
+    
+    /**
+     * Remembers the current transform as the one the entity had at the end of
+     * the last tick, for drawing between ticks.
+     */
+    void savePrevious() {
+        previousX = getX();
+        previousY = getY();
+        previousRotation = rotation;
+        previousSaved = true;
+    }
+    
+    /**
+     * Draws the entity at its current transform until the next tick instead
+     * of interpolating from the last one. Call after teleporting the entity so
+     * it is not drawn sliding to its new position.
+     */
+    public void resetInterpolation() {
+        previousSaved = false;
+    }
+    
+    /**
+     * Returns the x position at the fraction alpha of the way from the last
+     * tick's position to the current one.
+     */
+    public float getDrawX(float alpha) {
+        float previousX = getPreviousX();
+        return previousX + (getX() - previousX) * alpha;
+    }
+    
+    public float getDrawY(float alpha) {
+        float previousY = getPreviousY();
+        return previousY + (getY() - previousY) * alpha;
+    }
+    
+    public float getDrawRotation(float alpha) {
+        return MathUtils.lerpAngleDeg(getPreviousRotation(), rotation, alpha);
+    }
+    
+    /**
+     * Returns the x position at the end of the last tick, or the current one
+     * if the entity has not been through a tick since it was added or reset.
+     */
+    public float getPreviousX() {
+        return previousSaved ? previousX : getX();
+    }
+    
+    public float getPreviousY() {
+        return previousSaved ? previousY : getY();
+    }
+    
+    public float getPreviousRotation() {
+        return previousSaved ? previousRotation : rotation;
+    }
+    
+    /**
+     * Returns the x position the entity started its move from this tick, which
+     * swept collision tests run from. Unlike {@link #getPreviousX()} this is
+     * also set on the tick the entity spawns.
+     */
+    public float getSweepX() {
+        return store != null ? store.sweepX[slot] : sweepX;
+    }
+    
+    /**
+     * Returns the y position the entity started its move from this tick.
+     */
+    public float getSweepY() {
+        return store != null ? store.sweepY[slot] : sweepY;
+    }
+
     public Vector2 getPosition() {
-        return position.cpy();
+        return new Vector2(getX(), getY());
+    }
+    
+    /**
+     * Sets out to the position and returns it, without allocating.
+     */
+    public Vector2 getPosition(Vector2 out) {
+        return out.set(getX(), getY());
     }
     
     public float getX() {
-        return position.x;
+        return store != null ? store.x[slot] : position.x;
     }
     
     public float getY() {
-        return position.y;
+        return store != null ? store.y[slot] : position.y;
     }
     
     public void setPosition(Vector2 position) {
-        this.position.set(position);
+        setPosition(position.x, position.y);
     }
     
     public void setPosition(float x, float y) {
@@ -106,60 +310,84 @@ public abstract class Entity {
     }
     
     public void setX(float x) {
-        this.position.x = x;
+        if (store != null) {
+            store.nextX[slot] = x;
+        } else {
+            this.position.x = x;
+        }
     }
     
     public void setY(float y) {
-        this.position.y = y;
+        if (store != null) {
+            store.nextY[slot] = y;
+        } else {
+            this.position.y = y;
+        }
     }
     
     public void addX(float x) {
-        this.position.x += x;
+        setX(getX() + x);
     }
     
     public void addY(float y) {
-        this.position.y += y;
+        setY(getY() + y);
     }
 
     public float getSpeed() {
-        return speed.len();
+        float x = getXspeed();
+        float y = getYspeed();
+        return (float) Math.sqrt(x * x + y * y);
     }
     
     public float getXspeed() {
-        return speed.x;
+        return store != null ? store.xSpeed[slot] : speed.x;
     }
     
     public float getYspeed() {
-        return speed.y;
+        return store != null ? store.ySpeed[slot] : speed.y;
     }
     
     public void setSpeed(Vector2 speed) {
-        this.speed.set(speed);
+        setXspeed(speed.x);
+        setYspeed(speed.y);
     }
     
     public void setXspeed(float x) {
-        this.speed.x = x;
+        if (store != null) {
+            store.nextXSpeed[slot] = x;
+        } else {
+            this.speed.x = x;
+        }
     }
     
     public void setYspeed(float y) {
-        this.speed.y = y;
+        if (store != null) {
+            store.nextYSpeed[slot] = y;
+        } else {
+            this.speed.y = y;
+        }
     }
     
     public void addXspeed(float x) {
-        this.speed.x += x;
+        setXspeed(getXspeed() + x);
     }
     
     public void addYspeed(float y) {
-        this.speed.y += y;
+        setYspeed(getYspeed() + y);
     }
     
     public void setMotion(float speed, float direction) {
-        this.speed.set(speed, 0);
-        this.speed.rotate(direction);
+        float radians = direction * MathUtils.degreesToRadians;
+        setXspeed(speed * (float) Math.cos(radians));
+        setYspeed(speed * (float) Math.sin(radians));
     }
     
     public float getDirection() {
-        return this.speed.angle();
+        float angle = (float) Math.atan2(getYspeed(), getXspeed()) * MathUtils.radiansToDegrees;
+        if (angle < 0) {
+            angle += 360;
+        }
+        return angle;
     }
 
     public float getRotation() {
@@ -170,6 +398,10 @@ public abstract class Entity {
         return offset.cpy();
     }
     
+    public Vector2 getOffset(Vector2 out) {
+        return out.set(offset);
+    }
+    
     public float getOffsetX() {
         return offset.x;
     }
@@ -190,6 +422,10 @@ public abstract class Entity {
         return scale.cpy();
     }
     
+    public Vector2 getScale(Vector2 out) {
+        return out.set(scale);
+    }
+    
     public float getScaleX() {
         return scale.x;
     }
@@ -218,6 +454,16 @@ public abstract class Entity {
         return destroyed;
     }
 
+    /**
+     * Returns the handle identifying this entity in its manager, or
+     * {@link EntityManager#NULL_HANDLE} if it has not been added. Unlike a
+     * reference, the handle stops resolving once the entity is removed, even
+     * if the object is recycled.
+     */
+    public long getHandle() {
+        return handle;
+    }
+
     public EntityManager getManager() {
         return manager;
     }
@@ -227,6 +473,9 @@ public abstract class Entity {
     }
 
     public void setTextureRegion(TextureRegion textureRegion) {
+        if (this.textureRegion == null || textureRegion == null || this.textureRegion.getTexture() != textureRegion.getTexture()) {
+            manager.getRenderQueue().invalidate(this);
+        }
         this.textureRegion = textureRegion;
     }
 
@@ -234,29 +483,68 @@ public abstract class Entity {
         return core;
     }
     
+    /**
+     * Returns this entity's own random stream. It is reseeded every time the
+     * entity is obtained, from the stream of the entity that spawned it or
+     * from the manager's, so draws are reproducible for a given seed no
+     * matter how many threads update the entities.
+     */
+    public RandomXS128 getRandom() {
+        return random;
+    }
+    
+    /**
+     * Returns a random number between start (inclusive) and end (exclusive)
+     * from this entity's stream.
+     */
+    public float random(float start, float end) {
+        return start + random.nextFloat() * (end - start);
+    }
+    
+    /**
+     * Returns a random item from this entity's stream, or null if there are
+     * none.
+     */
+    public <T> T random(Array<T> items) {
+        return items.size == 0 ? null : items.get(random.nextInt(items.size));
+    }
+    
     public void setGravityX(float gravityX) {
-        gravity.x = gravityX;
+        if (store != null) {
+            store.nextXGravity[slot] = gravityX;
+        } else {
+            gravity.x = gravityX;
+        }
     }
     
     public void setGravityY(float gravityY) {
-        gravity.y = gravityY;
+        if (store != null) {
+            store.nextYGravity[slot] = gravityY;
+        } else {
+            gravity.y = gravityY;
+        }
     }
     
     public void setGravity(float speed, float direction) {
-        gravity.set(speed, 0);
-        gravity.rotate(direction);
+        float radians = direction * MathUtils.degreesToRadians;
+        setGravityX(speed * (float) Math.cos(radians));
+        setGravityY(speed * (float) Math.sin(radians));
     }
     
     public float getGravityX() {
-        return gravity.x;
+        return store != null ? store.xGravity[slot] : gravity.x;
     }
     
     public float getGravityY() {
-        return gravity.y;
+        return store != null ? store.yGravity[slot] : gravity.y;
     }
     
     public Vector2 getGravity() {
-        return gravity.cpy();
+        return new Vector2(getGravityX(), getGravityY());
+    }
+    
+    public Vector2 getGravity(Vector2 out) {
+        return out.set(getGravityX(), getGravityY());
     }
 
     public int getDepth() {
@@ -264,10 +552,30 @@ public abstract class Entity {
     }
 
     public void setDepth(int depth) {
-        this.depth = depth;
+        if (this.depth != depth) {
+            this.depth = depth;
+            manager.getRenderQueue().invalidate(this);
+        }
     }
 
+    /**
+     * Returns the collision box. Its size may be changed freely; its position
+     * is set from the entity's position every tick.
+     */
     public Rectangle getCollisionBox() {
+        if (store != null) {
+            collisionBox.x = store.boxX[slot];
+            collisionBox.y = store.boxY[slot];
+        }
+        return collisionBox;
+    }
+    
+    /**
+     * Returns the collision box as of the last {@link #getCollisionBox()}
+     * call, without syncing it from the store. Safe to read from several
+     * threads.
+     */
+    Rectangle getBox() {
         return collisionBox;
     }
 
@@ -278,4 +586,40 @@ public abstract class Entity {
     public void setCheckingCollisions(boolean checkingCollisions) {
         this.checkingCollisions = checkingCollisions;
     }
+
+    public int getCollisionCategory() {
+        return collisionCategory;
+    }
+
+    public void setCollisionCategory(int collisionCategory) {
+        this.collisionCategory = collisionCategory;
+    }
+
+    public int getCollisionMask() {
+        return collisionMask;
+    }
+
+    public void setCollisionMask(int collisionMask) {
+        this.collisionMask = collisionMask;
+    }
+    
+    public boolean isContinuousCollision() {
+        return continuousCollision;
+    }
+
+    /**
+     * Fast movers should enable continuous collision. Their collision box is
+     * swept from where it started the tick to where it ended, so they cannot
+     * tunnel through thin entities at low tick rates.
+     */
+    public void setContinuousCollision(boolean continuousCollision) {
+        this.continuousCollision = continuousCollision;
+    }
+    
+    /**
+     * Returns true if each entity's category is accepted by the other's mask.
+     */
+    public boolean canCollideWith(Entity other) {
+        return (collisionCategory & other.collisionMask) != 0 && (other.collisionCategory & collisionMask) != 0;
+    }
 }
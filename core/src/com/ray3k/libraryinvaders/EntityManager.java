@@ -24,82 +24,943 @@
 
 package com.ray3k.libraryinvaders;
 
+import com.badlogic.gdx.audio.Sound;
+import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.math.RandomXS128;
+import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.utils.Array;
-import java.util.Comparator;
-import java.util.Iterator;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.ObjectMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 public class EntityManager {
+    public static final float DEFAULT_CELL_SIZE = 64.0f;
+    public static final long NULL_HANDLE = 0L;
     private final Array<Entity> entities;
+    private final CommandBuffer commands;
+    private final SpatialHash broadphase;
+    private boolean broadphaseEnabled;
+    private final Array<Entity> candidates;
+    private final ContactManager contactManager;
+    private final Rectangle bounds;
+    private final ObjectMap<Class<?>, EntityPool<?>> pools;
+    private final Array<Entity> released;
+    private Entity[] slots;
+    private int[] generations;
+    private int slotCount;
+    private final IntArray freeSlots;
+    private EntityStore store;
+    private final Array<Array<Entity>> types;
+    private final RenderQueue renderQueue;
+    private static final int MIN_CHUNK_SIZE = 64;
+    private int parallelism;
+    private ExecutorService executor;
+    private final Array<UpdateChunk> chunks;
+    private final Array<CollideChunk> collideChunks;
+    private final ArrayList<UpdateChunk> tasks;
+    private final ArrayList<CollideChunk> collideTasks;
+    private final ThreadLocal<UpdateChunk> currentChunk;
+    private boolean acting;
+    private boolean soundEnabled;
+    private final RandomXS128 random;
+    private Entity spawner;
+    private int nextId;
+    private FrameProfiler profiler;
+    private SoundQueue soundQueue;
     
     public EntityManager() {
+        this(DEFAULT_CELL_SIZE);
+    }
+    
+    public EntityManager(float cellSize) {
         entities = new Array<Entity>();
+        commands = new CommandBuffer();
+        broadphase = new SpatialHash(cellSize);
+        broadphaseEnabled = true;
+        candidates = new Array<Entity>();
+        contactManager = new ContactManager();
+        bounds = new Rectangle();
+        pools = new ObjectMap<Class<?>, EntityPool<?>>();
+        released = new Array<Entity>();
+        slots = new Entity[64];
+        generations = new int[64];
+        freeSlots = new IntArray();
+        types = new Array<Array<Entity>>();
+        renderQueue = new RenderQueue();
+        profiler = new FrameProfiler();
+        parallelism = 1;
+        chunks = new Array<UpdateChunk>();
+        tasks = new ArrayList<UpdateChunk>();
+        collideChunks = new Array<CollideChunk>();
+        collideTasks = new ArrayList<CollideChunk>();
+        currentChunk = new ThreadLocal<UpdateChunk>();
+        soundEnabled = true;
+        random = new RandomXS128(0);
+    }
+    
+    public interface EntityConsumer<T extends Entity> {
+        public void accept(T entity);
     }
     
+    /**
+     * Registers the entity right away, so its handle, type index and drawing
+     * work immediately. It joins the update order at the next flush: after the
+     * act phase when added while acting, otherwise at the start of the next
+     * tick.
+     */
     public void addEntity(Entity entity) {
-        entities.add(entity);
+        entity.id = nextId++;
+        entity.collisionType = contactManager.getType(entity.getClass());
+        commands.spawn(entity);
+        
+        Array<Entity> type = getType(entity.collisionType);
+        entity.typeIndex = type.size;
+        type.add(entity);
+        renderQueue.add(entity);
+        
+        int slot;
+        if (freeSlots.size > 0) {
+            slot = freeSlots.pop();
+        } else {
+            slot = slotCount++;
+            if (slot == slots.length) {
+                Entity[] newSlots = new Entity[slots.length * 2];
+                System.arraycopy(slots, 0, newSlots, 0, slots.length);
+                slots = newSlots;
+                
+                int[] newGenerations = new int[generations.length * 2];
+                System.arraycopy(generations, 0, newGenerations, 0, generations.length);
+                generations = newGenerations;
+            }
+            if (generations[slot] == 0) {
+                generations[slot] = 1;
+            }
+        }
+        slots[slot] = entity;
+        entity.slot = slot;
+        entity.handle = ((long) generations[slot] << 32) | slot;
+        
+        if (store != null) {
+            store.attach(entity);
+        }
+    }
+    
+    private Array<Entity> getType(int collisionType) {
+        while (types.size <= collisionType) {
+            types.add(new Array<Entity>());
+        }
+        return types.get(collisionType);
+    }
+    
+    private void removeFromType(Entity entity) {
+        Array<Entity> type = types.get(entity.collisionType);
+        Entity last = type.pop();
+        if (last != entity) {
+            type.set(entity.typeIndex, last);
+            last.typeIndex = entity.typeIndex;
+        }
+    }
+    
+    /**
+     * Returns the number of entities of exactly the given class. Destroyed
+     * entities are counted until they are removed at the start of the next
+     * tick.
+     */
+    public int count(Class<? extends Entity> type) {
+        int index = contactManager.findType(type);
+        return index >= 0 && index < types.size ? types.get(index).size : 0;
+    }
+    
+    /**
+     * Returns a living entity of exactly the given class, or null if there is
+     * none.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Entity> T first(Class<T> type) {
+        int index = contactManager.findType(type);
+        if (index >= 0 && index < types.size) {
+            Array<Entity> entities = types.get(index);
+            for (int i = 0; i < entities.size; i++) {
+                Entity entity = entities.get(i);
+                if (!entity.isDestroyed()) {
+                    return (T) entity;
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Calls the consumer for every living entity of exactly the given class
+     * without copying. Entities of that class spawned by the consumer are not
+     * visited.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Entity> void forEach(Class<T> type, EntityConsumer<? super T> consumer) {
+        int index = contactManager.findType(type);
+        if (index >= 0 && index < types.size) {
+            Array<Entity> entities = types.get(index);
+            int size = entities.size;
+            for (int i = 0; i < size; i++) {
+                Entity entity = entities.get(i);
+                if (!entity.isDestroyed()) {
+                    consumer.accept((T) entity);
+                }
+            }
+        }
+    }
+    
+    private void releaseSlot(Entity entity) {
+        if (store != null) {
+            store.detach(entity);
+        }
+        removeFromType(entity);
+        renderQueue.remove(entity);
+        
+        int slot = entity.slot;
+        slots[slot] = null;
+        generations[slot]++;
+        if (generations[slot] == 0) {
+            generations[slot] = 1;
+        }
+        freeSlots.add(slot);
+        entity.slot = -1;
+        entity.handle = NULL_HANDLE;
+    }
+    
+    /**
+     * Resolves a handle from {@link Entity#getHandle()}. Returns null if the
+     * entity has been removed from the manager since the handle was issued.
+     */
+    public Entity get(long handle) {
+        int slot = (int) handle;
+        if (slot < 0 || slot >= slotCount || generations[slot] != (int) (handle >>> 32)) {
+            return null;
+        }
+        return slots[slot];
+    }
+    
+    /**
+     * Returns the live entity behind the handle, or null if it has been
+     * removed or is already destroyed.
+     */
+    public Entity getLiving(long handle) {
+        Entity entity = get(handle);
+        if (entity == null || entity.isDestroyed()) {
+            return null;
+        }
+        return entity;
+    }
+    
+    /**
+     * Registers the pool that {@link #obtain(Class)} draws entities of the
+     * given type from.
+     */
+    public <T extends Entity> void addPool(Class<T> type, EntityPool<T> pool) {
+        pools.put(type, pool);
+    }
+    
+    @SuppressWarnings("unchecked")
+    public <T extends Entity> EntityPool<T> getPool(Class<T> type) {
+        return (EntityPool<T>) pools.get(type);
+    }
+    
+    /**
+     * Takes an entity of the given type from its pool, adds it to the manager
+     * and calls {@link Entity#create()}. The entity goes back to the pool once
+     * it has been destroyed and removed. During a parallel act the entity is
+     * created right away but only added, and given a handle, once every entity
+     * has acted.
+     * <p>
+     * The entity's random stream is seeded from the stream of the entity
+     * acting when it was obtained, or from the manager's stream outside of
+     * act.
+     */
+    public <T extends Entity> T obtain(Class<T> type) {
+        EntityPool<T> pool = getPool(type);
+        if (pool == null) {
+            throw new IllegalArgumentException("No pool registered for entity type: " + type.getName());
+        }
+        
+        UpdateChunk chunk = getDeferring();
+        T entity;
+        if (chunk != null) {
+            synchronized (pool) {
+                entity = pool.obtain();
+            }
+        } else {
+            entity = pool.obtain();
+        }
+        entity.pool = pool;
+        Entity spawner = chunk != null ? chunk.entity : this.spawner;
+        entity.getRandom().setSeed((spawner != null ? spawner.getRandom() : random).nextLong());
+        
+        if (chunk != null) {
+            entity.create();
+            chunk.defer(UpdateChunk.SPAWN, entity);
+        } else {
+            addEntity(entity);
+            entity.create();
+        }
+        return entity;
     }
     
     public Array<Entity> getEntities() {
-        return new Array<Entity>(entities);
+        return getEntities(new Array<Entity>());
     }
     
+    /**
+     * Replaces the contents of out with every entity in the manager, in update
+     * order, and returns it. Reusing out avoids allocating each frame.
+     */
+    public Array<Entity> getEntities(Array<Entity> out) {
+        out.clear();
+        out.addAll(entities);
+        out.addAll(commands.getSpawns());
+        return out;
+    }
+
+    public float getCellSize() {
+        return broadphase.getCellSize();
+    }
+
+    public void setCellSize(float cellSize) {
+        broadphase.setCellSize(cellSize);
+    }
+
+    /**
+     * Creates the broadphase cells covering the area ahead of time, so
+     * entities moving into them during play allocate nothing. Changing the
+     * cell size drops them.
+     */
+    public void reserveCells(float x, float y, float width, float height) {
+        broadphase.reserve(bounds.set(x, y, width, height));
+    }
+
+    public boolean isBroadphaseEnabled() {
+        return broadphaseEnabled;
+    }
+
+    /**
+     * When disabled, every colliding entity is tested against every other
+     * entity. Both modes report the same contacts in the same order.
+     */
+    public void setBroadphaseEnabled(boolean broadphaseEnabled) {
+        this.broadphaseEnabled = broadphaseEnabled;
+    }
+
+    public ContactManager getContactManager() {
+        return contactManager;
+    }
+    
+    /**
+     * Registers the handler receiving contact events between entities of type
+     * A and type B.
+     * @see ContactManager#addContactHandler(Class, Class, ContactManager.ContactHandler)
+     */
+    public <A extends Entity, B extends Entity> void addContactHandler(Class<A> typeA, Class<B> typeB, ContactManager.ContactHandler<A, B> handler) {
+        contactManager.addContactHandler(typeA, typeB, handler);
+    }
+    
+    public boolean isStoreEnabled() {
+        return store != null;
+    }
+    
+    /**
+     * Moves entity transform and motion into a structure-of-arrays
+     * {@link EntityStore} so integration runs as one loop over primitive
+     * arrays. Entity accessors keep working in either mode.
+     */
+    public void setStoreEnabled(boolean storeEnabled) {
+        if (!storeEnabled) {
+            setParallelism(1);
+        }
+        commands.applySpawns(entities);
+        
+        if (storeEnabled && store == null) {
+            store = new EntityStore(slotCount);
+            for (Entity entity : entities) {
+                store.attach(entity);
+            }
+        } else if (!storeEnabled && store != null) {
+            for (Entity entity : entities) {
+                store.detach(entity);
+            }
+            store = null;
+        }
+    }
+    
+    public int getParallelism() {
+        return parallelism;
+    }
+    
+    /**
+     * Spreads entity act calls over the given number of threads. While
+     * parallel, act reads the state every entity had at the start of the
+     * update and writes become visible once all entities have acted. Spawns,
+     * disposals, sounds and posted tasks are applied afterwards in entity
+     * order, so the result matches a sequential update as long as entities
+     * do not modify each other directly. Collision tests are spread over the
+     * same threads when the broadphase is enabled, with contacts dispatched on
+     * the calling thread in the sequential order. Requires and enables the
+     * entity store. A value of 1 updates on the calling thread.
+     */
+    public void setParallelism(int parallelism) {
+        parallelism = Math.max(1, parallelism);
+        if (parallelism == this.parallelism) {
+            return;
+        }
+        
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        this.parallelism = parallelism;
+        
+        if (parallelism > 1) {
+            setStoreEnabled(true);
+            executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "entity-update");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+    
+    /**
+     * Stops the worker threads used for parallel updates.
+     */
+    public void dispose() {
+        setParallelism(1);
+    }
+    
+    /**
+     * Removes every entity without destroying it and returns each one to its
+     * pool. Pools, contact handlers and the capacity of every collection are
+     * kept, so a manager reused for another game allocates nothing until that
+     * game outgrows the last one. Handles issued before stay invalid.
+     */
+    public void clear() {
+        commands.applySpawns(entities);
+        commands.clear();
+        contactManager.clear();
+        broadphase.clear();
+        renderQueue.clear();
+        
+        for (int i = 0; i < entities.size; i++) {
+            Entity entity = entities.get(i);
+            releaseSlot(entity);
+            released.add(entity);
+        }
+        entities.clear();
+        
+        for (int i = 0; i < released.size; i++) {
+            free(released.get(i));
+        }
+        released.clear();
+        
+        //slots are handed out in the same order as in a new manager
+        freeSlots.clear();
+        slotCount = 0;
+        nextId = 0;
+    }
+    
+    /**
+     * Plays the sound now, or once the current parallel act has finished.
+     * Does nothing while sound is disabled.
+     */
+    public void playSound(Sound sound) {
+        if (soundEnabled && !defer(UpdateChunk.SOUND, sound)) {
+            if (soundQueue != null) {
+                soundQueue.add(sound);
+            } else {
+                sound.play();
+            }
+        }
+    }
+    
+    public SoundQueue getSoundQueue() {
+        return soundQueue;
+    }
+
+    /**
+     * Sends sounds to the queue instead of playing them, for when the manager
+     * acts on a thread other than the one playing audio. Null plays them
+     * directly.
+     */
+    public void setSoundQueue(SoundQueue soundQueue) {
+        this.soundQueue = soundQueue;
+    }
+
+    /**
+     * Returns the manager's random stream, which seeds the streams of entities
+     * obtained outside of act. Only use it from the thread calling act.
+     */
+    public RandomXS128 getRandom() {
+        return random;
+    }
+    
+    /**
+     * Restarts the manager's random stream. A manager given the same seed and
+     * the same calls produces the same entities and random draws.
+     */
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+    
+    public FrameProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Sets the profiler that the integrate, act, collide, act_end and draw
+     * phases are timed with. The default one is never enabled.
+     */
+    public void setProfiler(FrameProfiler profiler) {
+        this.profiler = profiler;
+    }
+    
+    public boolean isSoundEnabled() {
+        return soundEnabled;
+    }
+
+    /**
+     * Disabling sound skips every sound played through
+     * {@link #playSound(Sound)}, for running the simulation without audio.
+     */
+    public void setSoundEnabled(boolean soundEnabled) {
+        this.soundEnabled = soundEnabled;
+    }
+    
+    /**
+     * Runs the task now, or on the calling thread once the current parallel
+     * act has finished.
+     */
+    public void post(Runnable runnable) {
+        if (!defer(UpdateChunk.POST, runnable)) {
+            runnable.run();
+        }
+    }
+    
+    private UpdateChunk getDeferring() {
+        return acting ? currentChunk.get() : null;
+    }
+    
+    /**
+     * Records the command for the current parallel act. Returns false if
+     * called outside of one, in which case the caller should act immediately.
+     */
+    boolean defer(int command, Object target) {
+        UpdateChunk chunk = getDeferring();
+        if (chunk == null) {
+            return false;
+        }
+        chunk.defer(command, target);
+        return true;
+    }
+    
+    private void actParallel(float delta, int count) {
+        int chunkCount = Math.min(parallelism * 4, (count + MIN_CHUNK_SIZE - 1) / MIN_CHUNK_SIZE);
+        while (chunks.size < chunkCount) {
+            chunks.add(new UpdateChunk(this));
+        }
+        
+        tasks.clear();
+        for (int i = 0; i < chunkCount; i++) {
+            UpdateChunk chunk = chunks.get(i);
+            chunk.start = count * i / chunkCount;
+            chunk.end = count * (i + 1) / chunkCount;
+            chunk.delta = delta;
+            tasks.add(chunk);
+        }
+        
+        store.beginBuffered();
+        acting = true;
+        try {
+            invokeAll(tasks);
+        } finally {
+            acting = false;
+            store.commitBuffered();
+        }
+        
+        for (int i = 0; i < chunkCount; i++) {
+            chunks.get(i).apply();
+        }
+    }
+    
+    private void invokeAll(ArrayList<? extends Callable<Object>> tasks) {
+        try {
+            List<Future<Object>> futures = executor.invokeAll(tasks);
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GdxRuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new GdxRuntimeException(e.getCause());
+        }
+    }
+    
+    void runChunk(UpdateChunk chunk) {
+        currentChunk.set(chunk);
+        try {
+            for (int i = chunk.start; i < chunk.end; i++) {
+                Entity entity = entities.get(i);
+                if (!entity.isDestroyed()) {
+                    chunk.entity = entity;
+                    entity.act(chunk.delta);
+                }
+            }
+        } finally {
+            chunk.entity = null;
+            currentChunk.set(null);
+        }
+    }
+    
+    void despawn() {
+        commands.despawn();
+    }
+    
+    void removeEntity(Entity entity) {
+        broadphase.remove(entity);
+        releaseSlot(entity);
+        released.add(entity);
+    }
+    
+    /**
+     * Updates every entity in a fixed order. Spawns and despawns recorded since
+     * the last tick are applied first and each entity's transform is saved for
+     * interpolated drawing, then all entities move and act in the order they
+     * were added. Entities spawned while acting are appended
+     * afterwards and act on their first tick. Anything spawned later in the
+     * tick joins at the start of the next one.
+     */
     public void act(float delta) {
-        Iterator<Entity> iter = entities.iterator();
-        while (iter.hasNext()) {
-            Entity entity = iter.next();
-            if (!entity.isDestroyed()) {
-                entity.addXspeed(entity.getGravityX() * delta);
-                entity.addYspeed(entity.getGravityY() * delta);
-                
-                entity.addX(entity.getXspeed() * delta);
-                entity.addY(entity.getYspeed() * delta);
-                
-                entity.getCollisionBox().setPosition(entity.getX(), entity.getY());
+        commands.applySpawns(entities);
+        commands.applyDespawns(entities, this);
+        
+        long time = profiler.start();
+        int count = entities.size;
+        for (int i = 0; i < count; i++) {
+            entities.get(i).savePrevious();
+        }
+        
+        if (store != null) {
+            store.integrate(delta);
+        } else {
+            for (int i = 0; i < count; i++) {
+                Entity entity = entities.get(i);
+                if (!entity.isDestroyed()) {
+                    entity.integrate(delta);
+                }
+            }
+        }
+        profiler.stop(FrameProfiler.INTEGRATE, time);
+        
+        time = profiler.start();
+        if (executor != null) {
+            actParallel(delta, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                Entity entity = entities.get(i);
+                if (!entity.isDestroyed()) {
+                    spawner = entity;
+                    entity.act(delta);
+                }
+            }
+            spawner = null;
+        }
+        
+        //entities spawned while acting still move and act on their first tick
+        while (commands.hasSpawns()) {
+            int first = entities.size;
+            commands.applySpawns(entities);
+            for (int i = first; i < entities.size; i++) {
+                Entity entity = entities.get(i);
+                if (!entity.isDestroyed()) {
+                    entity.integrate(delta);
+                    spawner = entity;
+                    entity.act(delta);
+                }
+            }
+            spawner = null;
+        }
+        profiler.stop(FrameProfiler.ACT, time);
+        
+        time = profiler.start();
+        collide();
+        profiler.stop(FrameProfiler.COLLIDE, time);
+        
+        time = profiler.start();
+        count = entities.size;
+        for (int i = 0; i < count; i++) {
+            entities.get(i).act_end(delta);
+        }
+        profiler.stop(FrameProfiler.ACT_END, time);
+    }
+    
+    /**
+     * Finds every overlapping pair once, in array order, and hands them to the
+     * contact manager for dispatch. This is the collision phase of
+     * {@link #act(float)}, exposed so it can be run and measured on its own.
+     */
+    public void collide() {
+        contactManager.begin();
+        
+        for (int i = 0; i < entities.size; i++) {
+            Entity entity = entities.get(i);
+            entity.order = i;
+            entity.getCollisionBox();
+            if (broadphaseEnabled) {
+                broadphase.update(entity);
+            }
+        }
+        
+        if (executor != null && broadphaseEnabled) {
+            collideParallel();
+        } else {
+            collideSequential();
+        }
+        
+        contactManager.dispatch();
+        
+        //contacts of removed entities have ended, so they can be recycled
+        for (int i = 0; i < released.size; i++) {
+            free(released.get(i));
+        }
+        released.clear();
+    }
+    
+    private void collideSequential() {
+        for (int i = 0; i < entities.size; i++) {
+            Entity entity = entities.get(i);
+            if (entity.isDestroyed() || !entity.isCheckingCollisions()) {
+                continue;
+            }
+            
+            if (broadphaseEnabled) {
+                candidates.clear();
+                broadphase.query(SpatialHash.getBounds(entity, bounds), candidates);
                 
-                entity.act(delta);
+                sortByOrder(candidates);
                 
-                for (int i = 0; i < entities.size ; i++) {
-                    if (!entity.isDestroyed() && entity.isCheckingCollisions()) {
-                        Entity other = entities.get(i);
-                        if (other.isCheckingCollisions()) {
-                            if (entity.getCollisionBox().overlaps(other.getCollisionBox())) {
-                                entity.collision(other);
-                            }
-                        }
-                    } else {
-                        break;
-                    }
+                for (int j = 0; j < candidates.size; j++) {
+                    testPair(entity, candidates.get(j));
                 }
+                candidates.clear();
             } else {
-                iter.remove();
+                for (int j = i + 1; j < entities.size; j++) {
+                    testPair(entity, entities.get(j));
+                }
             }
         }
+    }
+    
+    /**
+     * Splits the entities into ranges tested on the worker threads, then
+     * reports the overlaps range by range so the contact manager sees them in
+     * the same order as the sequential loop.
+     */
+    private void collideParallel() {
+        int count = entities.size;
+        int chunkCount = Math.min(parallelism * 4, (count + MIN_CHUNK_SIZE - 1) / MIN_CHUNK_SIZE);
+        while (collideChunks.size < chunkCount) {
+            collideChunks.add(new CollideChunk(this));
+        }
         
-        iter = entities.iterator();
-        while (iter.hasNext()) {
-            Entity entity = iter.next();
+        collideTasks.clear();
+        for (int i = 0; i < chunkCount; i++) {
+            CollideChunk chunk = collideChunks.get(i);
+            chunk.start = count * i / chunkCount;
+            chunk.end = count * (i + 1) / chunkCount;
+            collideTasks.add(chunk);
+        }
+        invokeAll(collideTasks);
+        
+        for (int i = 0; i < chunkCount; i++) {
+            CollideChunk chunk = collideChunks.get(i);
+            Array<Entity> pairs = chunk.pairs;
+            FloatArray times = chunk.times;
+            contactManager.countPairTests(chunk.pairTests);
+            for (int j = 0; j < times.size; j++) {
+                contactManager.addOverlap(pairs.get(j * 2), pairs.get(j * 2 + 1), times.get(j));
+            }
+            chunk.clear();
+        }
+    }
+    
+    void runChunk(CollideChunk chunk) {
+        Array<Entity> candidates = chunk.candidates;
+        for (int i = chunk.start; i < chunk.end; i++) {
+            Entity entity = entities.get(i);
+            if (entity.isDestroyed() || !entity.isCheckingCollisions()) {
+                continue;
+            }
+            
+            candidates.clear();
+            broadphase.queryAll(SpatialHash.getBounds(entity, chunk.bounds), candidates);
+            sortByOrder(candidates);
             
-            entity.act_end(delta);
+            Entity previous = null;
+            for (int j = 0; j < candidates.size; j++) {
+                Entity other = candidates.get(j);
+                if (other != previous && canTest(entity, other)) {
+                    chunk.pairTests++;
+                    float time = test(entity, other);
+                    if (time >= 0.0f) {
+                        chunk.pairs.add(entity);
+                        chunk.pairs.add(other);
+                        chunk.times.add(time);
+                    }
+                }
+                previous = other;
+            }
         }
+        candidates.clear();
     }
     
-    public void draw(SpriteBatch spriteBatch, float delta) {
-        entities.sort(new Comparator<Entity>() {
-            @Override
-            public int compare(Entity o1, Entity o2) {
-                return o2.getDepth() - o1.getDepth();
+    @SuppressWarnings("unchecked")
+    private void free(Entity entity) {
+        if (entity.pool != null) {
+            //obtain only sets the pool of the entity's own type
+            EntityPool<Entity> pool = (EntityPool<Entity>) entity.pool;
+            entity.pool = null;
+            pool.free(entity);
+        }
+    }
+    
+    /**
+     * Visits candidates in array order, matching the brute force loop.
+     */
+    private static void sortByOrder(Array<Entity> candidates) {
+        for (int j = 1; j < candidates.size; j++) {
+            Entity candidate = candidates.get(j);
+            int k = j - 1;
+            while (k >= 0 && candidates.get(k).order > candidate.order) {
+                candidates.set(k + 1, candidates.get(k));
+                k--;
             }
-        });
+            candidates.set(k + 1, candidate);
+        }
+    }
+    
+    private static boolean canTest(Entity entity, Entity other) {
+        return other.order > entity.order && !other.isDestroyed() && other.isCheckingCollisions() && entity.canCollideWith(other);
+    }
+    
+    /**
+     * Returns the time of impact of the two collision boxes, or -1 if they do
+     * not touch this tick.
+     */
+    private static float test(Entity entity, Entity other) {
+        if (entity.isContinuousCollision() || other.isContinuousCollision()) {
+            return sweep(entity, other);
+        }
+        return entity.getBox().overlaps(other.getBox()) ? 0.0f : -1.0f;
+    }
+    
+    private void testPair(Entity entity, Entity other) {
+        if (canTest(entity, other)) {
+            contactManager.countPairTest();
+            float time = test(entity, other);
+            if (time >= 0.0f) {
+                contactManager.addOverlap(entity, other, time);
+            }
+        }
+    }
+    
+    /**
+     * Swept AABB test of both collision boxes moving from where they started
+     * the tick to where they are now. Returns the earliest time of impact as a
+     * fraction of the tick, 0 if they already overlapped, or -1 if they never
+     * touch.
+     */
+    private static float sweep(Entity entity, Entity other) {
+        Rectangle a = entity.getBox();
+        Rectangle b = other.getBox();
+        float ax = entity.getSweepX();
+        float ay = entity.getSweepY();
+        float bx = other.getSweepX();
+        float by = other.getSweepY();
+        float dx = (a.x - ax) - (b.x - bx);
+        float dy = (a.y - ay) - (b.y - by);
         
-        for (Entity entity : entities) {
-            if (!entity.isDestroyed()) {
-                if (entity.getTextureRegion() != null) {
-                    spriteBatch.draw(entity.getTextureRegion(), entity.getX() + entity.getXspeed() * delta, entity.getY() + entity.getYspeed() * delta, entity.getOffsetX(), entity.getOffsetY(), entity.getTextureRegion().getRegionWidth(), entity.getTextureRegion().getRegionHeight(), entity.getScaleX(), entity.getScaleY(), entity.getRotation());
-                }
-                
-                entity.draw(spriteBatch, delta);
+        float enterX, exitX;
+        if (dx == 0.0f) {
+            if (ax < bx + b.width && ax + a.width > bx) {
+                enterX = Float.NEGATIVE_INFINITY;
+                exitX = Float.POSITIVE_INFINITY;
+            } else {
+                return -1.0f;
             }
+        } else {
+            float t1 = (bx - (ax + a.width)) / dx;
+            float t2 = (bx + b.width - ax) / dx;
+            enterX = Math.min(t1, t2);
+            exitX = Math.max(t1, t2);
         }
+        
+        float enterY, exitY;
+        if (dy == 0.0f) {
+            if (ay < by + b.height && ay + a.height > by) {
+                enterY = Float.NEGATIVE_INFINITY;
+                exitY = Float.POSITIVE_INFINITY;
+            } else {
+                return -1.0f;
+            }
+        } else {
+            float t1 = (by - (ay + a.height)) / dy;
+            float t2 = (by + b.height - ay) / dy;
+            enterY = Math.min(t1, t2);
+            exitY = Math.max(t1, t2);
+        }
+        
+        float enter = Math.max(enterX, enterY);
+        float exit = Math.min(exitX, exitY);
+        if (enter < exit && enter < 1.0f && exit > 0.0f) {
+            return Math.max(0.0f, enter);
+        }
+        return -1.0f;
+    }
+    
+    public RenderQueue getRenderQueue() {
+        return renderQueue;
+    }
+    
+    public void draw(SpriteBatch spriteBatch, float alpha) {
+        draw(spriteBatch, alpha, null);
+    }
+    
+    /**
+     * Adds everything {@link #draw(SpriteBatch, float)} would draw to the
+     * snapshot, for drawing on another thread.
+     */
+    public void snapshot(RenderSnapshot snapshot) {
+        renderQueue.snapshot(snapshot);
+    }
+    
+    /**
+     * Draws entities in depth order, skipping texture regions outside the
+     * camera's view. Alpha is the fraction of a tick elapsed since the last
+     * one, used to interpolate each entity between its last two transforms.
+     */
+    public void draw(SpriteBatch spriteBatch, float alpha, OrthographicCamera camera) {
+        long time = profiler.start();
+        renderQueue.draw(spriteBatch, alpha, camera);
+        profiler.stop(FrameProfiler.DRAW, time);
     }
 }
@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Raymond Buckley.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ray3k.libraryinvaders;
+
+/**
+ * Structure-of-arrays storage for entity transform and motion, indexed by
+ * entity slot. While an entity is attached, its position, speed, gravity and
+ * collision box position live here instead of in the entity, and integration
+ * runs as one loop over primitive arrays. The collision box position is owned
+ * by the store; only its size is read from the entity's Rectangle.
+ * <p>
+ * Setters write through the next arrays, which are the same as the current
+ * ones unless the store is buffered. While buffered, writes go to a back
+ * buffer and reads keep returning the state from before
+ * {@link #beginBuffered()}.
+ */
+public class EntityStore {
+    float[] x;
+    float[] y;
+    float[] xSpeed;
+    float[] ySpeed;
+    float[] xGravity;
+    float[] yGravity;
+    float[] boxX;
+    float[] boxY;
+    float[] sweepX;
+    float[] sweepY;
+    float[] live;
+    float[] nextX;
+    float[] nextY;
+    float[] nextXSpeed;
+    float[] nextYSpeed;
+    float[] nextXGravity;
+    float[] nextYGravity;
+    private float[] backX;
+    private float[] backY;
+    private float[] backXSpeed;
+    private float[] backYSpeed;
+    private float[] backXGravity;
+    private float[] backYGravity;
+    private int size;
+    
+    public EntityStore(int capacity) {
+        allocate(Math.max(capacity, 16));
+    }
+    
+    private void allocate(int capacity) {
+        x = resize(x, capacity);
+        y = resize(y, capacity);
+        xSpeed = resize(xSpeed, capacity);
+        ySpeed = resize(ySpeed, capacity);
+        xGravity = resize(xGravity, capacity);
+        yGravity = resize(yGravity, capacity);
+        boxX = resize(boxX, capacity);
+        boxY = resize(boxY, capacity);
+        sweepX = resize(sweepX, capacity);
+        sweepY = resize(sweepY, capacity);
+        live = resize(live, capacity);
+        alias();
+    }
+    
+    private void alias() {
+        nextX = x;
+        nextY = y;
+        nextXSpeed = xSpeed;
+        nextYSpeed = ySpeed;
+        nextXGravity = xGravity;
+        nextYGravity = yGravity;
+    }
+    
+    private static float[] copy(float[] source, float[] target, int size) {
+        if (target == null || target.length != source.length) {
+            target = new float[source.length];
+        }
+        System.arraycopy(source, 0, target, 0, size);
+        return target;
+    }
+    
+    /**
+     * Starts sending writes to a back buffer initialized from the current
+     * state. Entities must not be attached while buffered.
+     */
+    void beginBuffered() {
+        backX = copy(x, backX, size);
+        backY = copy(y, backY, size);
+        backXSpeed = copy(xSpeed, backXSpeed, size);
+        backYSpeed = copy(ySpeed, backYSpeed, size);
+        backXGravity = copy(xGravity, backXGravity, size);
+        backYGravity = copy(yGravity, backYGravity, size);
+        
+        nextX = backX;
+        nextY = backY;
+        nextXSpeed = backXSpeed;
+        nextYSpeed = backYSpeed;
+        nextXGravity = backXGravity;
+        nextYGravity = backYGravity;
+    }
+    
+    /**
+     * Swaps the back buffer in as the current state.
+     */
+    void commitBuffered() {
+        float[] swap = x;
+        x = backX;
+        backX = swap;
+        
+        swap = y;
+        y = backY;
+        backY = swap;
+        
+        swap = xSpeed;
+        xSpeed = backXSpeed;
+        backXSpeed = swap;
+        
+        swap = ySpeed;
+        ySpeed = backYSpeed;
+        backYSpeed = swap;
+        
+        swap = xGravity;
+        xGravity = backXGravity;
+        backXGravity = swap;
+        
+        swap = yGravity;
+        yGravity = backYGravity;
+        backYGravity = swap;
+        
+        alias();
+    }
+    
+    private static float[] resize(float[] array, int capacity) {
+        float[] newArray = new float[capacity];
+        if (array != null) {
+            System.arraycopy(array, 0, newArray, 0, Math.min(array.length, capacity));
+        }
+        return newArray;
+    }
+    
+    /**
+     * Moves the entity's transform and motion into its slot.
+     */
+    void attach(Entity entity) {
+        int slot = entity.slot;
+        if (slot >= x.length) {
+            allocate(Math.max(slot + 1, x.length * 2));
+        }
+        if (slot >= size) {
+            size = slot + 1;
+        }
+        entity.copyTo(this, slot);
+        live[slot] = entity.isDestroyed() ? 0.0f : 1.0f;
+        entity.store = this;
+    }
+    
+    /**
+     * Copies the slot back into the entity and frees the slot.
+     */
+    void detach(Entity entity) {
+        int slot = entity.slot;
+        entity.store = null;
+        entity.copyFrom(this, slot);
+        live[slot] = 0.0f;
+    }
+    
+    void kill(int slot) {
+        live[slot] = 0.0f;
+    }
+    
+    /**
+     * Applies gravity and speed to every live slot. Destroyed and free slots
+     * are masked out with a zero time step, so the loop has no branches.
+     */
+    public void integrate(float delta) {
+        final float[] x = this.x;
+        final float[] y = this.y;
+        final float[] xSpeed = this.xSpeed;
+        final float[] ySpeed = this.ySpeed;
+        final float[] xGravity = this.xGravity;
+        final float[] yGravity = this.yGravity;
+        final float[] boxX = this.boxX;
+        final float[] boxY = this.boxY;
+        final float[] sweepX = this.sweepX;
+        final float[] sweepY = this.sweepY;
+        final float[] live = this.live;
+        
+        for (int i = 0; i < size; i++) {
+            float step = delta * live[i];
+            sweepX[i] = x[i];
+            sweepY[i] = y[i];
+            xSpeed[i] += xGravity[i] * step;
+            ySpeed[i] += yGravity[i] * step;
+            x[i] += xSpeed[i] * step;
+            y[i] += ySpeed[i] * step;
+            boxX[i] = x[i];
+            boxY[i] = y[i];
+        }
+    }
+}
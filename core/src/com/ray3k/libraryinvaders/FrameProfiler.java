@@ -0,0 +1,227 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Raymond Buckley.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ray3k.libraryinvaders;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Align;
+import com.badlogic.gdx.utils.StringBuilder;
+import java.util.Arrays;
+
+/**
+ * Times the phases of each frame with {@link System#nanoTime()} and keeps the
+ * totals of the last {@link #WINDOW} frames per phase, along with the number
+ * of fixed steps run each frame. While disabled, {@link #start()} and
+ * {@link #stop(int, long)} return without reading the clock and nothing is
+ * recorded or allocated.
+ */
+public class FrameProfiler {
+    public static final int UPDATE = 0;
+    public static final int INTEGRATE = 1;
+    public static final int ACT = 2;
+    public static final int COLLIDE = 3;
+    public static final int ACT_END = 4;
+    public static final int DRAW = 5;
+    public static final int STAGE_ACT = 6;
+    public static final int STAGE_DRAW = 7;
+    public static final int FRAME = 8;
+    private static final int PHASES = 9;
+    private static final String[] NAMES = {"update", "integrate", "act", "collide", "act_end", "draw", "stage act", "stage draw", "frame"};
+    /**
+     * Number of frames the percentiles are taken over.
+     */
+    public static final int WINDOW = 240;
+    private boolean enabled;
+    private long[] current;
+    private long[][] samples;
+    private int[] steps;
+    private long[] sorted;
+    private int index;
+    private int count;
+    private long droppedSteps;
+    private long frameStart;
+    private static final float FIRST_COLUMN_WIDTH = 70.0f;
+    private static final float COLUMN_WIDTH = 55.0f;
+    private BitmapFont font;
+    private Matrix4 projection;
+    private StringBuilder text;
+    
+    /**
+     * Returns the current time if enabled, to be passed to
+     * {@link #stop(int, long)}.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+    
+    /**
+     * Adds the time since start to the phase's total for this frame. Phases
+     * run several times a frame, such as once per fixed step, add up.
+     */
+    public void stop(int phase, long start) {
+        if (enabled && start != 0L) {
+            current[phase] += System.nanoTime() - start;
+        }
+    }
+    
+    /**
+     * Records this frame's phase totals and step count and starts the next
+     * frame. Dropped steps is the running total of ticks skipped to stay
+     * within the step cap.
+     */
+    public void endFrame(int stepCount, long droppedSteps) {
+        if (!enabled) {
+            return;
+        }
+        this.droppedSteps = droppedSteps;
+        
+        long now = System.nanoTime();
+        if (frameStart != 0L) {
+            current[FRAME] = now - frameStart;
+            for (int i = 0; i < PHASES; i++) {
+                samples[i][index] = current[i];
+            }
+            steps[index] = stepCount;
+            index = (index + 1) % WINDOW;
+            count = Math.min(count + 1, WINDOW);
+        }
+        Arrays.fill(current, 0L);
+        frameStart = now;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts or stops recording. The window is cleared either way, so the
+     * overlay only shows frames recorded since it was last turned on.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (samples == null) {
+            current = new long[PHASES];
+            samples = new long[PHASES][WINDOW];
+            steps = new int[WINDOW];
+            sorted = new long[WINDOW];
+            text = new StringBuilder();
+        }
+        Arrays.fill(current, 0L);
+        index = 0;
+        count = 0;
+        frameStart = 0L;
+    }
+    
+    /**
+     * Returns the value at the fraction of the window, from 0 to 1, in
+     * nanoseconds.
+     */
+    public long getPercentile(int phase, float fraction) {
+        if (count == 0) {
+            return 0L;
+        }
+        System.arraycopy(samples[phase], 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        int i = (int) Math.ceil(fraction * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, i))];
+    }
+    
+    public int getMaxSteps() {
+        int max = 0;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, steps[i]);
+        }
+        return max;
+    }
+    
+    public int getLastSteps() {
+        return count == 0 ? 0 : steps[(index + WINDOW - 1) % WINDOW];
+    }
+    
+    /**
+     * Draws p50, p95, p99 and the worst time of each phase in microseconds in
+     * the top left corner of the screen, followed by the fixed steps of the
+     * last frame, the most in one frame of the window and the total dropped. Does nothing while disabled.
+     */
+    public void draw(SpriteBatch spriteBatch) {
+        if (!enabled) {
+            return;
+        }
+        
+        if (font == null) {
+            font = new BitmapFont();
+            projection = new Matrix4();
+        }
+        
+        projection.setToOrtho2D(0, 0, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
+        spriteBatch.setProjectionMatrix(projection);
+        spriteBatch.begin();
+        
+        float y = Gdx.graphics.getHeight() - 5.0f;
+        float lineHeight = font.getLineHeight();
+        drawCell(spriteBatch, 0, y, "us");
+        drawCell(spriteBatch, 1, y, "p50");
+        drawCell(spriteBatch, 2, y, "p95");
+        drawCell(spriteBatch, 3, y, "p99");
+        drawCell(spriteBatch, 4, y, "max");
+        for (int i = 0; i < PHASES; i++) {
+            y -= lineHeight;
+            drawCell(spriteBatch, 0, y, NAMES[i]);
+            drawMicros(spriteBatch, 1, y, getPercentile(i, 0.5f));
+            drawMicros(spriteBatch, 2, y, getPercentile(i, 0.95f));
+            drawMicros(spriteBatch, 3, y, getPercentile(i, 0.99f));
+            drawMicros(spriteBatch, 4, y, getPercentile(i, 1.0f));
+        }
+        y -= lineHeight;
+        text.setLength(0);
+        text.append("steps ").append(getLastSteps()).append(", max ").append(getMaxSteps()).append(", dropped ").append(droppedSteps);
+        font.draw(spriteBatch, text, 5.0f, y);
+        
+        spriteBatch.end();
+    }
+    
+    private void drawMicros(SpriteBatch spriteBatch, int column, float y, long nanos) {
+        text.setLength(0);
+        text.append(nanos / 1000L);
+        drawCell(spriteBatch, column, y, text);
+    }
+    
+    private void drawCell(SpriteBatch spriteBatch, int column, float y, CharSequence value) {
+        if (column == 0) {
+            font.draw(spriteBatch, value, 5.0f, y);
+        } else {
+            font.draw(spriteBatch, value, 5.0f + FIRST_COLUMN_WIDTH + (column - 1) * COLUMN_WIDTH, y, COLUMN_WIDTH, Align.right, false);
+        }
+    }
+    
+    public void dispose() {
+        if (font != null) {
+            font.dispose();
+            font = null;
+        }
+    }
+}
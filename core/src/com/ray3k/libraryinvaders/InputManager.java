@@ -25,12 +25,20 @@ package com.ray3k.libraryinvaders;
 
 import com.badlogic.gdx.InputProcessor;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
 
 public class InputManager implements InputProcessor {
     private final Array<KeyActionListener> flapListeners;
+    private final boolean[] pressedKeys;
+    private final IntArray events;
+    private final IntArray applying;
+    private ReplayWriter recorder;
 
     public InputManager() {
         flapListeners = new Array<KeyActionListener>();
+        pressedKeys = new boolean[256];
+        events = new IntArray();
+        applying = new IntArray();
     }
     
     public interface KeyActionListener {
@@ -47,18 +55,79 @@ public class InputManager implements InputProcessor {
     
     public void dispose() {
         flapListeners.clear();
+        synchronized (events) {
+            events.clear();
+        }
+        recorder = null;
+        for (int i = 0; i < pressedKeys.length; i++) {
+            pressedKeys[i] = false;
+        }
+    }
+    
+    /**
+     * Returns whether the key is held according to the events this manager
+     * received, rather than polling Gdx.input. Lets the simulation be driven
+     * by events alone.
+     */
+    public boolean isKeyPressed(int keycode) {
+        return keycode >= 0 && keycode < pressedKeys.length && pressedKeys[keycode];
+    }
+
+    /**
+     * Applies the key events received since the last call, in order. Events
+     * are queued until the start of the next tick so that a game only sees
+     * input on tick boundaries, which is what a replay can reproduce. Events
+     * may be received on a different thread than the one calling update.
+     */
+    public void update() {
+        synchronized (events) {
+            applying.addAll(events);
+            events.clear();
+        }
+        
+        for (int i = 0; i < applying.size; i++) {
+            int event = applying.get(i);
+            int keycode = event >> 1;
+            boolean down = (event & 1) != 0;
+            
+            pressedKeys[keycode] = down;
+            if (recorder != null) {
+                recorder.keyEvent(keycode, down);
+            }
+            if (down) {
+                for (int j = 0; j < flapListeners.size; j++) {
+                    flapListeners.get(j).keyPressed(keycode);
+                }
+            }
+        }
+        applying.clear();
+    }
+    
+    /**
+     * Sets the writer that applied key events are recorded to, or null to
+     * stop recording.
+     */
+    public void setRecorder(ReplayWriter recorder) {
+        this.recorder = recorder;
     }
 
     @Override
     public boolean keyDown(int keycode) {
-        for (KeyActionListener flapListener : flapListeners) {
-            flapListener.keyPressed(keycode);
+        if (keycode >= 0 && keycode < pressedKeys.length) {
+            synchronized (events) {
+                events.add(keycode << 1 | 1);
+            }
         }
         return false;
     }
 
     @Override
     public boolean keyUp(int keycode) {
+        if (keycode >= 0 && keycode < pressedKeys.length) {
+            synchronized (events) {
+                events.add(keycode << 1);
+            }
+        }
         return false;
     }
 
@@ -0,0 +1,263 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Raymond Buckley.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ray3k.libraryinvaders;
+
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.utils.Array;
+import java.util.Comparator;
+
+/**
+ * Keeps entities in draw order: deepest first, then grouped by texture so the
+ * SpriteBatch flushes as rarely as possible. The order is maintained
+ * incrementally; a full sort only happens after a depth or texture changes.
+ */
+public class RenderQueue {
+    private final Array<Entity> queue;
+    private final Array<Entity> added;
+    private final Comparator<Entity> comparator;
+    private boolean sortNeeded;
+    private boolean removed;
+    private int submittedCount;
+    private int culledCount;
+    private int drawnCount;
+    
+    public RenderQueue() {
+        queue = new Array<Entity>();
+        added = new Array<Entity>();
+        comparator = new Comparator<Entity>() {
+            @Override
+            public int compare(Entity o1, Entity o2) {
+                return RenderQueue.compare(o1, o2);
+            }
+        };
+    }
+    
+    private static int compare(Entity o1, Entity o2) {
+        if (o1.getDepth() != o2.getDepth()) {
+            return o2.getDepth() - o1.getDepth();
+        }
+        int texture1 = getTexture(o1);
+        int texture2 = getTexture(o2);
+        return texture1 < texture2 ? -1 : (texture1 == texture2 ? 0 : 1);
+    }
+    
+    private static int getTexture(Entity entity) {
+        TextureRegion region = entity.getTextureRegion();
+        return region == null || region.getTexture() == null ? 0 : region.getTexture().getTextureObjectHandle();
+    }
+    
+    void add(Entity entity) {
+        added.add(entity);
+    }
+    
+    void remove(Entity entity) {
+        if (entity.renderQueued) {
+            entity.renderQueued = false;
+            removed = true;
+        }
+    }
+    
+    /**
+     * Empties the queue, keeping its capacity.
+     */
+    void clear() {
+        for (int i = 0; i < queue.size; i++) {
+            queue.get(i).renderQueued = false;
+        }
+        queue.clear();
+        added.clear();
+        sortNeeded = false;
+        removed = false;
+    }
+    
+    /**
+     * Called when an entity's depth or texture changes.
+     */
+    void invalidate(Entity entity) {
+        if (entity.renderQueued) {
+            sortNeeded = true;
+        }
+    }
+    
+    /**
+     * Brings the queue up to date: drops removed entities, re-sorts if a key
+     * changed and inserts entities added since the last frame.
+     */
+    public void prepare() {
+        if (removed) {
+            int write = 0;
+            for (int i = 0; i < queue.size; i++) {
+                Entity entity = queue.get(i);
+                if (entity.renderQueued) {
+                    queue.set(write++, entity);
+                }
+            }
+            queue.truncate(write);
+            removed = false;
+        }
+        
+        if (sortNeeded) {
+            queue.sort(comparator);
+            sortNeeded = false;
+        }
+        
+        for (int i = 0; i < added.size; i++) {
+            Entity entity = added.get(i);
+            if (entity.renderQueued || entity.slot == -1) {
+                continue;
+            }
+            
+            int low = 0;
+            int high = queue.size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compare(queue.get(mid), entity) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            queue.insert(low, entity);
+            entity.renderQueued = true;
+        }
+        added.clear();
+    }
+    
+    /**
+     * Draws every living entity in order, at the fraction alpha of the way
+     * from its transform at the end of the previous tick to the current one.
+     * Texture regions falling outside the camera are skipped when a camera is
+     * given; custom draw code always runs and receives alpha.
+     */
+    public void draw(SpriteBatch spriteBatch, float alpha, OrthographicCamera camera) {
+        prepare();
+        
+        submittedCount = 0;
+        culledCount = 0;
+        drawnCount = 0;
+        
+        float left = 0.0f, right = 0.0f, bottom = 0.0f, top = 0.0f;
+        if (camera != null) {
+            float halfWidth = camera.viewportWidth * camera.zoom / 2.0f;
+            float halfHeight = camera.viewportHeight * camera.zoom / 2.0f;
+            left = camera.position.x - halfWidth;
+            right = camera.position.x + halfWidth;
+            bottom = camera.position.y - halfHeight;
+            top = camera.position.y + halfHeight;
+        }
+        
+        for (int i = 0; i < queue.size; i++) {
+            Entity entity = queue.get(i);
+            if (entity.isDestroyed()) {
+                continue;
+            }
+            
+            TextureRegion region = entity.getTextureRegion();
+            if (region != null) {
+                submittedCount++;
+                float x = entity.getDrawX(alpha);
+                float y = entity.getDrawY(alpha);
+                float width = region.getRegionWidth();
+                float height = region.getRegionHeight();
+                
+                if (camera != null && !isVisible(entity, x, y, width, height, left, right, bottom, top)) {
+                    culledCount++;
+                } else {
+                    spriteBatch.draw(region, x, y, entity.getOffsetX(), entity.getOffsetY(), width, height, entity.getScaleX(), entity.getScaleY(), entity.getDrawRotation(alpha));
+                    drawnCount++;
+                }
+            }
+            
+            entity.draw(spriteBatch, alpha);
+        }
+    }
+    
+    /**
+     * Adds every living entity to the snapshot in the order they are drawn.
+     */
+    public void snapshot(RenderSnapshot snapshot) {
+        prepare();
+        
+        for (int i = 0; i < queue.size; i++) {
+            Entity entity = queue.get(i);
+            if (entity.isDestroyed()) {
+                continue;
+            }
+            
+            if (entity.getTextureRegion() != null) {
+                snapshot.add(entity);
+            }
+            entity.snapshot(snapshot);
+        }
+    }
+    
+    private static boolean isVisible(Entity entity, float x, float y, float width, float height, float left, float right, float bottom, float top) {
+        float originX = x + entity.getOffsetX();
+        float originY = y + entity.getOffsetY();
+        float minX = -entity.getOffsetX() * entity.getScaleX();
+        float maxX = (width - entity.getOffsetX()) * entity.getScaleX();
+        float minY = -entity.getOffsetY() * entity.getScaleY();
+        float maxY = (height - entity.getOffsetY()) * entity.getScaleY();
+        
+        if (entity.getRotation() != 0.0f) {
+            float extentX = Math.max(Math.abs(minX), Math.abs(maxX));
+            float extentY = Math.max(Math.abs(minY), Math.abs(maxY));
+            float radius = (float) Math.sqrt(extentX * extentX + extentY * extentY);
+            minX = -radius;
+            maxX = radius;
+            minY = -radius;
+            maxY = radius;
+        }
+        
+        float x1 = originX + Math.min(minX, maxX);
+        float x2 = originX + Math.max(minX, maxX);
+        float y1 = originY + Math.min(minY, maxY);
+        float y2 = originY + Math.max(minY, maxY);
+        return x2 >= left && x1 <= right && y2 >= bottom && y1 <= top;
+    }
+
+    /**
+     * Number of texture regions considered for drawing last frame.
+     */
+    public int getSubmittedCount() {
+        return submittedCount;
+    }
+
+    /**
+     * Number of texture regions skipped last frame for being off camera.
+     */
+    public int getCulledCount() {
+        return culledCount;
+    }
+
+    /**
+     * Number of texture regions sent to the SpriteBatch last frame.
+     */
+    public int getDrawnCount() {
+        return drawnCount;
+    }
+}
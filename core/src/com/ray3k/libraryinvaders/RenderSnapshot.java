@@ -0,0 +1,202 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Raymond Buckley.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ray3k.libraryinvaders;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.MathUtils;
+
+/**
+ * Everything needed to draw one tick of a game without touching its entities:
+ * a list of textured quads in depth order, each with the transform it had at
+ * the end of the previous tick and at the end of this one. The simulation
+ * thread fills a snapshot and publishes it; the render thread only draws it.
+ * Storage is reused between ticks.
+ */
+public class RenderSnapshot {
+    private static final int U = 0;
+    private static final int V = 1;
+    private static final int U2 = 2;
+    private static final int V2 = 3;
+    private static final int PREVIOUS_X = 4;
+    private static final int PREVIOUS_Y = 5;
+    private static final int X = 6;
+    private static final int Y = 7;
+    private static final int ORIGIN_X = 8;
+    private static final int ORIGIN_Y = 9;
+    private static final int WIDTH = 10;
+    private static final int HEIGHT = 11;
+    private static final int SCALE_X = 12;
+    private static final int SCALE_Y = 13;
+    private static final int PREVIOUS_ROTATION = 14;
+    private static final int ROTATION = 15;
+    private static final int COLOR = 16;
+    private static final int STRIDE = 17;
+    private static final float WHITE = Color.WHITE.toFloatBits();
+    private Texture[] textures;
+    private float[] data;
+    private int size;
+    private long time;
+    private int generation;
+    private int score;
+    private final TextureRegion region;
+
+    public RenderSnapshot() {
+        textures = new Texture[64];
+        data = new float[64 * STRIDE];
+        region = new TextureRegion();
+    }
+    
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            textures[i] = null;
+        }
+        size = 0;
+    }
+    
+    /**
+     * Adds the entity's texture region with its full transform.
+     */
+    public void add(Entity entity) {
+        TextureRegion region = entity.getTextureRegion();
+        int i = add(region.getTexture(), region.getU(), region.getV(), region.getU2(), region.getV2());
+        data[i + PREVIOUS_X] = entity.getPreviousX();
+        data[i + PREVIOUS_Y] = entity.getPreviousY();
+        data[i + X] = entity.getX();
+        data[i + Y] = entity.getY();
+        data[i + ORIGIN_X] = entity.getOffsetX();
+        data[i + ORIGIN_Y] = entity.getOffsetY();
+        data[i + WIDTH] = region.getRegionWidth();
+        data[i + HEIGHT] = region.getRegionHeight();
+        data[i + SCALE_X] = entity.getScaleX();
+        data[i + SCALE_Y] = entity.getScaleY();
+        data[i + PREVIOUS_ROTATION] = entity.getPreviousRotation();
+        data[i + ROTATION] = entity.getRotation();
+        data[i + COLOR] = WHITE;
+    }
+    
+    /**
+     * Adds an unrotated quad moving from the previous position to the current
+     * one. The texture coordinates follow {@link TextureRegion}, with v at the
+     * top. Color is a packed float as given by {@link Color#toFloatBits()}.
+     */
+    public void add(Texture texture, float u, float v, float u2, float v2, float previousX, float previousY, float x, float y, float width, float height, float color) {
+        int i = add(texture, u, v, u2, v2);
+        data[i + PREVIOUS_X] = previousX;
+        data[i + PREVIOUS_Y] = previousY;
+        data[i + X] = x;
+        data[i + Y] = y;
+        data[i + ORIGIN_X] = 0.0f;
+        data[i + ORIGIN_Y] = 0.0f;
+        data[i + WIDTH] = width;
+        data[i + HEIGHT] = height;
+        data[i + SCALE_X] = 1.0f;
+        data[i + SCALE_Y] = 1.0f;
+        data[i + PREVIOUS_ROTATION] = 0.0f;
+        data[i + ROTATION] = 0.0f;
+        data[i + COLOR] = color;
+    }
+    
+    private int add(Texture texture, float u, float v, float u2, float v2) {
+        if (size == textures.length) {
+            Texture[] newTextures = new Texture[size * 2];
+            System.arraycopy(textures, 0, newTextures, 0, size);
+            textures = newTextures;
+            float[] newData = new float[size * 2 * STRIDE];
+            System.arraycopy(data, 0, newData, 0, size * STRIDE);
+            data = newData;
+        }
+        
+        textures[size] = texture;
+        int i = size * STRIDE;
+        data[i + U] = u;
+        data[i + V] = v;
+        data[i + U2] = u2;
+        data[i + V2] = v2;
+        size++;
+        return i;
+    }
+    
+    /**
+     * Draws every quad at the fraction alpha of the way from its previous
+     * transform to its current one. Only call from the render thread.
+     */
+    public void draw(SpriteBatch spriteBatch, float alpha) {
+        for (int j = 0; j < size; j++) {
+            int i = j * STRIDE;
+            region.setTexture(textures[j]);
+            region.setRegion(data[i + U], data[i + V], data[i + U2], data[i + V2]);
+            
+            float x = data[i + PREVIOUS_X] + (data[i + X] - data[i + PREVIOUS_X]) * alpha;
+            float y = data[i + PREVIOUS_Y] + (data[i + Y] - data[i + PREVIOUS_Y]) * alpha;
+            float rotation = MathUtils.lerpAngleDeg(data[i + PREVIOUS_ROTATION], data[i + ROTATION], alpha);
+            spriteBatch.setColor(data[i + COLOR]);
+            spriteBatch.draw(region, x, y, data[i + ORIGIN_X], data[i + ORIGIN_Y], data[i + WIDTH], data[i + HEIGHT], data[i + SCALE_X], data[i + SCALE_Y], rotation);
+        }
+        spriteBatch.setColor(Color.WHITE);
+    }
+    
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which the tick this snapshot
+     * shows was due.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    /**
+     * Returns the {@link StateManager#getGeneration()} of the state this
+     * snapshot was taken from, so a newly loaded state can skip snapshots left
+     * over from the previous one.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    public void setGeneration(int generation) {
+        this.generation = generation;
+    }
+
+    /**
+     * Returns the score to show in the HUD.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    public void setScore(int score) {
+        this.score = score;
+    }
+}
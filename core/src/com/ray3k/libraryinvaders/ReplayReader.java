@@ -0,0 +1,161 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Raymond Buckley.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ray3k.libraryinvaders;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Streams a replay written by {@link ReplayWriter} back into an
+ * {@link InputManager}, one tick at a time. Only the next record is held in
+ * memory.
+ */
+public class ReplayReader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final FileHandle file;
+    private final DataInputStream input;
+    private final long seed;
+    private final String character;
+    private final long msPerUpdate;
+    private int idleTicks;
+    private int eventCount;
+    private boolean finished;
+    private int ticks;
+
+    public ReplayReader(FileHandle file) {
+        this.file = file;
+        input = new DataInputStream(new BufferedInputStream(file.read(), BUFFER_SIZE));
+        try {
+            if (input.readInt() != ReplayWriter.MAGIC) {
+                throw new GdxRuntimeException("Not a replay: " + file.path());
+            }
+            int version = input.readUnsignedByte();
+            if (version != ReplayWriter.VERSION) {
+                throw new GdxRuntimeException("Unsupported replay version " + version + ": " + file.path());
+            }
+            seed = input.readLong();
+            character = input.readUTF();
+            msPerUpdate = readVarint();
+            readRecord();
+        } catch (IOException e) {
+            close();
+            throw new GdxRuntimeException("Error reading replay: " + file.path(), e);
+        }
+    }
+    
+    /**
+     * Sends the key events of the next tick to the input manager. Does nothing
+     * once the replay is finished.
+     */
+    public void apply(InputManager inputManager) {
+        if (finished) {
+            return;
+        }
+        ticks++;
+        
+        if (idleTicks > 0) {
+            idleTicks--;
+            return;
+        }
+        
+        if (eventCount == 0) {
+            finished = true;
+            close();
+            return;
+        }
+        
+        try {
+            for (int i = 0; i < eventCount; i++) {
+                int event = readVarint();
+                if ((event & 1) != 0) {
+                    inputManager.keyDown(event >>> 1);
+                } else {
+                    inputManager.keyUp(event >>> 1);
+                }
+            }
+            readRecord();
+        } catch (IOException e) {
+            close();
+            throw new GdxRuntimeException("Error reading replay: " + file.path(), e);
+        }
+    }
+    
+    /**
+     * Returns true once every recorded tick has been applied.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+    
+    public void close() {
+        try {
+            input.close();
+        } catch (IOException e) {
+        }
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public String getCharacter() {
+        return character;
+    }
+
+    public long getMsPerUpdate() {
+        return msPerUpdate;
+    }
+    
+    /**
+     * Returns the number of ticks applied so far.
+     */
+    public int getTicks() {
+        return ticks;
+    }
+    
+    private void readRecord() throws IOException {
+        idleTicks = readVarint();
+        eventCount = readVarint();
+    }
+    
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = input.read();
+            if (b == -1) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint.");
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Raymond Buckley.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ray3k.libraryinvaders;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.IntArray;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Streams the key events of a game to a file as they are applied, one tick at
+ * a time. The header holds the seed, the selected character and the tick
+ * length. Each record after it holds the number of ticks without input since
+ * the previous record followed by the events of one tick, as varints. A record
+ * without events ends the replay.
+ *
+ * @see ReplayReader
+ */
+public class ReplayWriter {
+    static final int MAGIC = 0x4C495250;
+    static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final DataOutputStream output;
+    private final IntArray events;
+    private int idleTicks;
+    private int ticks;
+
+    public ReplayWriter(FileHandle file, long seed, String character, long msPerUpdate) {
+        output = new DataOutputStream(new BufferedOutputStream(file.write(false), BUFFER_SIZE));
+        events = new IntArray();
+        try {
+            output.writeInt(MAGIC);
+            output.writeByte(VERSION);
+            output.writeLong(seed);
+            output.writeUTF(character);
+            writeVarint((int) msPerUpdate);
+        } catch (IOException e) {
+            throw new GdxRuntimeException("Error writing replay: " + file.path(), e);
+        }
+    }
+    
+    /**
+     * Records a key event applied during the current tick.
+     */
+    public void keyEvent(int keycode, boolean down) {
+        events.add(keycode << 1 | (down ? 1 : 0));
+    }
+    
+    /**
+     * Ends the current tick. Ticks without events only increase a counter.
+     */
+    public void endTick() {
+        ticks++;
+        if (events.size == 0) {
+            idleTicks++;
+            return;
+        }
+        
+        try {
+            writeVarint(idleTicks);
+            writeVarint(events.size);
+            for (int i = 0; i < events.size; i++) {
+                writeVarint(events.get(i));
+            }
+        } catch (IOException e) {
+            throw new GdxRuntimeException("Error writing replay.", e);
+        }
+        events.clear();
+        idleTicks = 0;
+    }
+    
+    /**
+     * Writes the end record and closes the file. Events of a tick cut short by
+     * the game ending are kept. The reader runs one more tick after the last
+     * recorded one, which is the tick the game ended on.
+     */
+    public void close() {
+        if (events.size > 0) {
+            endTick();
+        }
+        try {
+            writeVarint(idleTicks);
+            writeVarint(0);
+            output.close();
+        } catch (IOException e) {
+            throw new GdxRuntimeException("Error writing replay.", e);
+        }
+    }
+    
+    /**
+     * Returns the number of ticks ended so far.
+     */
+    public int getTicks() {
+        return ticks;
+    }
+    
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+}
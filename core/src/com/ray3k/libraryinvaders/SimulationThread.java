@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Raymond Buckley.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ray3k.libraryinvaders;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the fixed-step simulation of simulated states on its own thread, so
+ * that slow frames do not delay ticks and bursts of ticks do not delay
+ * frames. After each batch of ticks it publishes a {@link RenderSnapshot}
+ * through a {@link TripleBuffer}; the render thread draws the latest one,
+ * interpolated by how far it is into the next tick. Sounds are handed over
+ * through a {@link SoundQueue}, input through the {@link InputManager} event
+ * queue, and state changes through {@link StateManager#loadState(String)}.
+ */
+public class SimulationThread implements Runnable {
+    private final Core core;
+    private final TripleBuffer<RenderSnapshot> snapshots;
+    private final SoundQueue soundQueue;
+    private Thread thread;
+    private volatile boolean running;
+
+    public SimulationThread(Core core) {
+        this.core = core;
+        snapshots = new TripleBuffer<RenderSnapshot>(new RenderSnapshot(), new RenderSnapshot(), new RenderSnapshot());
+        soundQueue = new SoundQueue();
+    }
+    
+    public void start() {
+        running = true;
+        thread = new Thread(this, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Stops the thread and waits for the tick in progress to finish.
+     */
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+        soundQueue.clear();
+    }
+
+    @Override
+    public void run() {
+        try {
+            StateManager stateManager = core.getStateManager();
+            long previous = System.nanoTime();
+            long lag = 0;
+            while (running) {
+                long current = System.nanoTime();
+                lag += current - previous;
+                previous = current;
+                
+                long nanosPerUpdate = core.getMsPerUpdate() * 1000000L;
+                float delta = core.getMsPerUpdate() / 1000.0f;
+                int steps = 0;
+                while (lag >= nanosPerUpdate) {
+                    if (steps == core.getMaxStepsPerFrame()) {
+                        long dropped = lag / nanosPerUpdate;
+                        core.addDropped(dropped, dropped * nanosPerUpdate);
+                        lag -= dropped * nanosPerUpdate;
+                        break;
+                    }
+                    
+                    //nothing to simulate, so there is no time to catch up on
+                    if (!stateManager.simulate(delta)) {
+                        lag %= nanosPerUpdate;
+                        break;
+                    }
+                    lag -= nanosPerUpdate;
+                    steps++;
+                }
+                
+                if (steps > 0) {
+                    RenderSnapshot snapshot = snapshots.getBack();
+                    snapshot.clear();
+                    if (stateManager.snapshot(snapshot)) {
+                        snapshot.setTime(current - lag);
+                        snapshots.publish();
+                    }
+                }
+                
+                LockSupport.parkNanos(nanosPerUpdate - lag);
+            }
+        } catch (final Throwable e) {
+            running = false;
+            Gdx.app.postRunnable(new Runnable() {
+                @Override
+                public void run() {
+                    throw new GdxRuntimeException("Simulation thread failed.", e);
+                }
+            });
+        }
+    }
+    
+    /**
+     * Returns the latest published snapshot. Only call from the render thread.
+     */
+    public RenderSnapshot getSnapshot() {
+        return snapshots.getFront();
+    }
+    
+    /**
+     * Returns how far the render thread is from the snapshot's tick to the
+     * next one, from 0 to 1.
+     */
+    public float getAlpha(RenderSnapshot snapshot) {
+        float alpha = (float) (System.nanoTime() - snapshot.getTime()) / (core.getMsPerUpdate() * 1000000L);
+        return Math.max(0.0f, Math.min(1.0f, alpha));
+    }
+
+    /**
+     * Returns the queue that simulated entity managers send their sounds to.
+     * The render thread plays them every frame.
+     */
+    public SoundQueue getSoundQueue() {
+        return soundQueue;
+    }
+    
+    public boolean isRunning() {
+        return running;
+    }
+}
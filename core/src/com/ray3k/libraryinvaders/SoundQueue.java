@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Raymond Buckley.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ray3k.libraryinvaders;
+
+import com.badlogic.gdx.audio.Sound;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Collects sounds played on one thread to be played on another.
+ */
+public class SoundQueue {
+    private final Array<Sound> pending;
+    private final Array<Sound> playing;
+
+    public SoundQueue() {
+        pending = new Array<Sound>(false, 16);
+        playing = new Array<Sound>(false, 16);
+    }
+    
+    public void add(Sound sound) {
+        synchronized (pending) {
+            pending.add(sound);
+        }
+    }
+    
+    /**
+     * Plays and removes every queued sound on the calling thread.
+     */
+    public void play() {
+        synchronized (pending) {
+            playing.addAll(pending);
+            pending.clear();
+        }
+        for (int i = 0; i < playing.size; i++) {
+            playing.get(i).play();
+        }
+        playing.clear();
+    }
+    
+    public void clear() {
+        synchronized (pending) {
+            pending.clear();
+        }
+    }
+}
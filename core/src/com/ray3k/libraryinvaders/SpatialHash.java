@@ -0,0 +1,232 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Raymond Buckley.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ray3k.libraryinvaders;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+
+/**
+ * Uniform grid broadphase. Entities are bucketed into every cell their
+ * collision box touches so that only entities sharing a cell need to be tested
+ * against each other.
+ */
+public class SpatialHash {
+    private final LongMap<Array<Entity>> cells;
+    private float cellSize;
+    private int queryMark;
+    private final Rectangle bounds;
+
+    public SpatialHash(float cellSize) {
+        cells = new LongMap<Array<Entity>>();
+        bounds = new Rectangle();
+        setCellSize(cellSize);
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Changes the cell size. Entities already in the hash are dropped and have
+     * to be re-added through {@link #update(Entity)}.
+     */
+    public void setCellSize(float cellSize) {
+        if (cellSize <= 0.0f) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+        clear();
+        cells.clear();
+    }
+    
+    /**
+     * Moves the entity into the cells covered by the area its collision box
+     * swept this tick. Does nothing if the covered cells have not changed.
+     */
+    public void update(Entity entity) {
+        Rectangle box = getBounds(entity, bounds);
+        int minX = MathUtils.floor(box.x / cellSize);
+        int minY = MathUtils.floor(box.y / cellSize);
+        int maxX = MathUtils.floor((box.x + box.width) / cellSize);
+        int maxY = MathUtils.floor((box.y + box.height) / cellSize);
+        
+        if (entity.inBroadphase) {
+            if (minX == entity.cellMinX && minY == entity.cellMinY && maxX == entity.cellMaxX && maxY == entity.cellMaxY) {
+                return;
+            }
+            remove(entity);
+        }
+        
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                long key = key(x, y);
+                Array<Entity> cell = cells.get(key);
+                if (cell == null) {
+                    cell = new Array<Entity>(false, 8);
+                    cells.put(key, cell);
+                }
+                cell.add(entity);
+            }
+        }
+        
+        entity.cellMinX = minX;
+        entity.cellMinY = minY;
+        entity.cellMaxX = maxX;
+        entity.cellMaxY = maxY;
+        entity.inBroadphase = true;
+    }
+    
+    /**
+     * Creates every cell the box touches ahead of time, so entities moving
+     * into them later allocate nothing.
+     */
+    public void reserve(Rectangle box) {
+        int minX = MathUtils.floor(box.x / cellSize);
+        int minY = MathUtils.floor(box.y / cellSize);
+        int maxX = MathUtils.floor((box.x + box.width) / cellSize);
+        int maxY = MathUtils.floor((box.y + box.height) / cellSize);
+        
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                long key = key(x, y);
+                if (!cells.containsKey(key)) {
+                    cells.put(key, new Array<Entity>(false, 8));
+                }
+            }
+        }
+    }
+    
+    public void remove(Entity entity) {
+        if (!entity.inBroadphase) {
+            return;
+        }
+        
+        for (int y = entity.cellMinY; y <= entity.cellMaxY; y++) {
+            for (int x = entity.cellMinX; x <= entity.cellMaxX; x++) {
+                Array<Entity> cell = cells.get(key(x, y));
+                if (cell != null) {
+                    cell.removeValue(entity, true);
+                }
+            }
+        }
+        
+        entity.inBroadphase = false;
+    }
+    
+    /**
+     * Adds every entity sharing a cell with the box to candidates. Each entity
+     * is added at most once, including entities already in candidates.
+     */
+    public void query(Rectangle box, Array<Entity> candidates) {
+        int mark = nextMark();
+        for (Entity entity : candidates) {
+            entity.queryMark = mark;
+        }
+        
+        int minX = MathUtils.floor(box.x / cellSize);
+        int minY = MathUtils.floor(box.y / cellSize);
+        int maxX = MathUtils.floor((box.x + box.width) / cellSize);
+        int maxY = MathUtils.floor((box.y + box.height) / cellSize);
+        
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                Array<Entity> cell = cells.get(key(x, y));
+                if (cell != null) {
+                    for (int i = 0; i < cell.size; i++) {
+                        Entity entity = cell.get(i);
+                        if (entity.queryMark != mark) {
+                            entity.queryMark = mark;
+                            candidates.add(entity);
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Adds every entity sharing a cell with the box to candidates without
+     * removing duplicates. Does not modify the hash or any entity, so several
+     * threads can query at once.
+     */
+    void queryAll(Rectangle box, Array<Entity> candidates) {
+        int minX = MathUtils.floor(box.x / cellSize);
+        int minY = MathUtils.floor(box.y / cellSize);
+        int maxX = MathUtils.floor((box.x + box.width) / cellSize);
+        int maxY = MathUtils.floor((box.y + box.height) / cellSize);
+        
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                Array<Entity> cell = cells.get(key(x, y));
+                if (cell != null) {
+                    candidates.addAll(cell);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns the area the entity occupies for broadphase purposes: the
+     * collision box as last synced by {@link Entity#getCollisionBox()},
+     * stretched back to where it started the tick. Every entity is stretched,
+     * not only continuous ones, because a continuous entity sweeps against
+     * its partner's whole move too.
+     */
+    static Rectangle getBounds(Entity entity, Rectangle bounds) {
+        Rectangle box = entity.getBox();
+        float sweepX = entity.getSweepX();
+        float sweepY = entity.getSweepY();
+        float minX = Math.min(box.x, sweepX);
+        float minY = Math.min(box.y, sweepY);
+        return bounds.set(minX, minY, Math.max(box.x, sweepX) - minX + box.width, Math.max(box.y, sweepY) - minY + box.height);
+    }
+    
+    /**
+     * Removes every entity. The emptied cells are kept for the next entities
+     * to reach them.
+     */
+    public void clear() {
+        for (Array<Entity> cell : cells.values()) {
+            for (int i = 0; i < cell.size; i++) {
+                cell.get(i).inBroadphase = false;
+            }
+            cell.clear();
+        }
+    }
+    
+    private int nextMark() {
+        queryMark++;
+        if (queryMark == 0) {
+            queryMark++;
+        }
+        return queryMark;
+    }
+    
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+}
@@ -42,4 +42,20 @@ public abstract class State {
     public Core getCore() {
         return core;
     }
+    
+    /**
+     * Returns true if act only touches the state's simulation and may run on
+     * the simulation thread. Such a state draws from the snapshots it fills in
+     * {@link #snapshot(RenderSnapshot)} while that thread is running.
+     */
+    public boolean isSimulated() {
+        return false;
+    }
+    
+    /**
+     * Fills the snapshot with what the state draws, after the latest act.
+     * Called on the simulation thread.
+     */
+    public void snapshot(RenderSnapshot snapshot) {
+    }
 }
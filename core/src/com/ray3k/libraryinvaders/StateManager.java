@@ -31,10 +31,19 @@ public class StateManager {
     private final ObjectMap<String, State> states;
     private State loadedState;
     private Core core;
+    private final Thread renderThread;
+    private boolean threaded;
+    private String pendingState;
+    private int generation;
     
+    /**
+     * Must be created on the thread that draws, which is the only thread
+     * allowed to start and stop states.
+     */
     public StateManager(Core core) {
         this.core = core;
         states = new ObjectMap<String, State>();
+        renderThread = Thread.currentThread();
     }
     
     public void addState(String name, State state) {
@@ -47,19 +56,67 @@ public class StateManager {
         }
     }
     
-    public void act(float delta) {
-        if (loadedState != null) {
+    /**
+     * Acts the loaded state, unless it is simulated and the simulation thread
+     * is acting it instead.
+     */
+    public synchronized void act(float delta) {
+        if (loadedState != null && !(threaded && loadedState.isSimulated())) {
             loadedState.act(delta);
         }
     }
     
+    /**
+     * Acts the loaded state on the simulation thread. Returns false without
+     * acting if the state is not simulated or is about to be replaced.
+     */
+    synchronized boolean simulate(float delta) {
+        if (loadedState == null || !loadedState.isSimulated() || pendingState != null) {
+            return false;
+        }
+        loadedState.act(delta);
+        return true;
+    }
+    
+    /**
+     * Fills the snapshot from the loaded state on the simulation thread.
+     * Returns false if the state is not simulated or is about to be replaced.
+     */
+    synchronized boolean snapshot(RenderSnapshot snapshot) {
+        if (loadedState == null || !loadedState.isSimulated() || pendingState != null) {
+            return false;
+        }
+        snapshot.setGeneration(generation);
+        loadedState.snapshot(snapshot);
+        return true;
+    }
+    
     public void dispose() {
         for (State state : states.values()) {
             state.dispose();
         }
     }
     
-    public void loadState(String name) {
+    /**
+     * Stops the loaded state and starts the named one. Called from another
+     * thread, such as by a simulated state deciding the game is over, the
+     * change is posted to the render thread and the loaded state is not acted
+     * again.
+     */
+    public synchronized void loadState(final String name) {
+        if (Thread.currentThread() != renderThread) {
+            pendingState = name;
+            Gdx.app.postRunnable(new Runnable() {
+                @Override
+                public void run() {
+                    loadState(name);
+                }
+            });
+            return;
+        }
+        
+        pendingState = null;
+        generation++;
         unloadState();
         
         if (name != null) {
@@ -71,7 +128,7 @@ public class StateManager {
         }
     }
     
-    public void unloadState() {
+    public synchronized void unloadState() {
         if (loadedState != null) {
             loadedState.stop();
             loadedState = null;
@@ -90,6 +147,30 @@ public class StateManager {
         return states.get(name);
     }
 
+    public State getLoadedState() {
+        return loadedState;
+    }
+
+    /**
+     * Returns a number that changes every time a state is loaded. Only call
+     * from the render thread.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    public boolean isThreaded() {
+        return threaded;
+    }
+
+    /**
+     * Sets whether simulated states are acted by the simulation thread instead
+     * of {@link #act(float)}.
+     */
+    public synchronized void setThreaded(boolean threaded) {
+        this.threaded = threaded;
+    }
+
     void resize(int width, int height) {
         if (loadedState != null) {
             loadedState.resize(width, height);
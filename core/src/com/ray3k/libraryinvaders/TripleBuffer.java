@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Raymond Buckley.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ray3k.libraryinvaders;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands the latest of a series of objects from one writing thread to one
+ * reading thread without locks. The writer fills the back item and publishes
+ * it; the reader takes the most recently published item. Neither side waits
+ * for the other, and items the reader was too slow to take are reused.
+ */
+public class TripleBuffer<T> {
+    private static final int INDEX = 3;
+    private static final int DIRTY = 4;
+    private final Object[] items;
+    private final AtomicInteger middle;
+    private int back;
+    private int front;
+
+    public TripleBuffer(T first, T second, T third) {
+        items = new Object[] {first, second, third};
+        front = 0;
+        middle = new AtomicInteger(1);
+        back = 2;
+    }
+    
+    /**
+     * Returns the item the writer may fill. Only call from the writing thread.
+     */
+    @SuppressWarnings("unchecked")
+    public T getBack() {
+        return (T) items[back];
+    }
+    
+    /**
+     * Makes the back item the latest one and gives the writer a new back item.
+     * Only call from the writing thread.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | DIRTY) & INDEX;
+    }
+    
+    /**
+     * Returns the latest published item, which stays unchanged until the next
+     * call. Only call from the reading thread.
+     */
+    @SuppressWarnings("unchecked")
+    public T getFront() {
+        if ((middle.get() & DIRTY) != 0) {
+            front = middle.getAndSet(front) & INDEX;
+        }
+        return (T) items[front];
+    }
+}
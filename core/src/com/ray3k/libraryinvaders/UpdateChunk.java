@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Raymond Buckley.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ray3k.libraryinvaders;
+
+import com.badlogic.gdx.audio.Sound;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import java.util.concurrent.Callable;
+
+/**
+ * A contiguous range of entities updated on a worker thread during a parallel
+ * act. Anything that would change the manager or touch the audio device is
+ * recorded instead and applied on the main thread, chunk by chunk, in the
+ * order it was requested.
+ */
+class UpdateChunk implements Callable<Object> {
+    static final int SPAWN = 0;
+    static final int DISPOSE = 1;
+    static final int SOUND = 2;
+    static final int POST = 3;
+    private final EntityManager manager;
+    private final IntArray commands;
+    private final Array<Object> targets;
+    int start;
+    int end;
+    float delta;
+    Entity entity;
+    
+    UpdateChunk(EntityManager manager) {
+        this.manager = manager;
+        commands = new IntArray();
+        targets = new Array<Object>();
+    }
+    
+    void defer(int command, Object target) {
+        commands.add(command);
+        targets.add(target);
+    }
+
+    @Override
+    public Object call() throws Exception {
+        manager.runChunk(this);
+        return null;
+    }
+    
+    void apply() {
+        for (int i = 0; i < commands.size; i++) {
+            Object target = targets.get(i);
+            switch (commands.get(i)) {
+                case SPAWN:
+                    manager.addEntity((Entity) target);
+                    break;
+                case DISPOSE:
+                    ((Entity) target).dispose();
+                    break;
+                case SOUND:
+                    manager.playSound((Sound) target);
+                    break;
+                case POST:
+                    ((Runnable) target).run();
+                    break;
+            }
+        }
+        commands.clear();
+        targets.clear();
+    }
+}
@@ -24,11 +24,44 @@
 
 package com.ray3k.libraryinvaders.entities;
 
+import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Rectangle;
+import com.ray3k.libraryinvaders.ContactManager.ContactAdapter;
 import com.ray3k.libraryinvaders.Entity;
+import com.ray3k.libraryinvaders.RenderSnapshot;
 import com.ray3k.libraryinvaders.states.GameState;
 
+/**
+ * Destructible barricade backed by an occupancy bitmask, one long per row of
+ * cells. Bullets are tested against the mask and carve small holes; enemies
+ * wipe out every cell they pass through. Only the remaining cells are drawn.
+ */
 public class BarricadeEntity extends Entity {
+    public static final int CATEGORY = 1 << 3;
+    public static final ContactAdapter<BarricadeEntity, BulletEntity> BULLET_COLLISION = new ContactAdapter<BarricadeEntity, BulletEntity>() {
+        @Override
+        public void onContactBegin(BarricadeEntity barricade, BulletEntity bullet) {
+            barricade.hit(bullet);
+        }
+
+        @Override
+        public void onContactStay(BarricadeEntity barricade, BulletEntity bullet) {
+            barricade.hit(bullet);
+        }
+    };
+    private static final int MAX_COLUMNS = 64;
+    private static final int MIN_CELL_SIZE = 2;
+    private static final int HOLE_RADIUS = 4;
+    private static final float WHITE = Color.WHITE.toFloatBits();
+    private TextureRegion region;
+    private long[] mask;
+    private int columns;
+    private int rows;
+    private int cellSize;
+    
     public BarricadeEntity(GameState gameState) {
         super(gameState.getEntityManager(), gameState.getCore());
     }
@@ -36,6 +69,129 @@ public class BarricadeEntity extends Entity {
     @Override
     public void create() {
         setCheckingCollisions(true);
+        setCollisionCategory(CATEGORY);
+        setCollisionMask(BulletEntity.CATEGORY | EnemyEntity.CATEGORY);
+    }
+    
+    /**
+     * Sets the image of the barricade and fills its mask.
+     */
+    public void setRegion(TextureRegion region) {
+        this.region = region;
+        int width = region.getRegionWidth();
+        int height = region.getRegionHeight();
+        cellSize = Math.max(MIN_CELL_SIZE, (width + MAX_COLUMNS - 1) / MAX_COLUMNS);
+        columns = (width + cellSize - 1) / cellSize;
+        rows = (height + cellSize - 1) / cellSize;
+        
+        if (mask == null || mask.length < rows) {
+            mask = new long[rows];
+        }
+        long full = columns == 64 ? -1L : (1L << columns) - 1;
+        for (int i = 0; i < rows; i++) {
+            mask[i] = full;
+        }
+        
+        getCollisionBox().setSize(width, height);
+    }
+
+    public TextureRegion getRegion() {
+        return region;
+    }
+    
+    public int getWidth() {
+        return region.getRegionWidth();
+    }
+    
+    public int getHeight() {
+        return region.getRegionHeight();
+    }
+    
+    /**
+     * Stops the bullet at the first occupied cell along its path this tick and
+     * carves a hole around it. The whole path from where the bullet started
+     * the tick is scanned, since a swept contact reports fast bullets that
+     * have already passed the cells they hit.
+     */
+    private void hit(BulletEntity bullet) {
+        Rectangle box = bullet.getCollisionBox();
+        float startX = bullet.getSweepX();
+        float startY = bullet.getSweepY();
+        long bits = getBits(getColumn(Math.min(box.x, startX)), getColumn(Math.max(box.x, startX) + box.width));
+        int row0 = Math.max(0, getRow(Math.min(box.y, startY)));
+        int row1 = Math.min(rows - 1, getRow(Math.max(box.y, startY) + box.height));
+        if (bits == 0 || row0 > row1) {
+            return;
+        }
+        
+        boolean upwards = box.y != startY ? box.y > startY : bullet.getYspeed() > 0.0f;
+        for (int i = 0; i <= row1 - row0; i++) {
+            int row = upwards ? row0 + i : row1 - i;
+            long hit = mask[row] & bits;
+            if (hit != 0) {
+                carve(Long.numberOfTrailingZeros(hit), row);
+                bullet.dispose();
+                return;
+            }
+        }
+    }
+    
+    private void carve(int column, int row) {
+        for (int y = -HOLE_RADIUS; y <= HOLE_RADIUS; y++) {
+            int current = row + y;
+            if (current >= 0 && current < rows) {
+                int halfWidth = (int) Math.sqrt(HOLE_RADIUS * HOLE_RADIUS - y * y);
+                mask[current] &= ~getBits(column - halfWidth, column + halfWidth);
+            }
+        }
+        checkEmpty();
+    }
+    
+    /**
+     * Clears every cell touched by the box.
+     */
+    public void erase(Rectangle box) {
+        long bits = getBits(getColumn(box.x), getColumn(box.x + box.width));
+        int row0 = Math.max(0, getRow(box.y));
+        int row1 = Math.min(rows - 1, getRow(box.y + box.height));
+        if (bits == 0 || row0 > row1) {
+            return;
+        }
+        
+        for (int row = row0; row <= row1; row++) {
+            mask[row] &= ~bits;
+        }
+        checkEmpty();
+    }
+    
+    private void checkEmpty() {
+        for (int i = 0; i < rows; i++) {
+            if (mask[i] != 0) {
+                return;
+            }
+        }
+        dispose();
+    }
+    
+    private int getColumn(float x) {
+        return MathUtils.floor((x - getX()) / cellSize);
+    }
+    
+    private int getRow(float y) {
+        return MathUtils.floor((y - getY()) / cellSize);
+    }
+    
+    /**
+     * Returns the bits for the columns from column0 to column1, clamped to the
+     * mask.
+     */
+    private long getBits(int column0, int column1) {
+        column0 = Math.max(0, column0);
+        column1 = Math.min(columns - 1, column1);
+        if (column0 > column1) {
+            return 0L;
+        }
+        return (-1L >>> (63 - (column1 - column0))) << column0;
     }
 
     @Override
@@ -46,8 +202,52 @@ public class BarricadeEntity extends Entity {
     public void act_end(float delta) {
     }
 
+    /**
+     * Draws each horizontal run of occupied cells as one quad.
+     */
     @Override
     public void draw(SpriteBatch spriteBatch, float delta) {
+        drawRuns(spriteBatch, null);
+    }
+
+    @Override
+    public void snapshot(RenderSnapshot snapshot) {
+        drawRuns(null, snapshot);
+    }
+    
+    /**
+     * Draws each horizontal run of intact cells as one quad, to the batch if
+     * given, otherwise to the snapshot.
+     */
+    private void drawRuns(SpriteBatch spriteBatch, RenderSnapshot snapshot) {
+        int width = region.getRegionWidth();
+        int height = region.getRegionHeight();
+        float u = region.getU();
+        float v = region.getV();
+        float uScale = (region.getU2() - u) / width;
+        float vScale = (region.getV2() - v) / height;
+        
+        for (int row = 0; row < rows; row++) {
+            long bits = mask[row];
+            int y0 = row * cellSize;
+            int y1 = Math.min(height, y0 + cellSize);
+            
+            while (bits != 0) {
+                int start = Long.numberOfTrailingZeros(bits);
+                int length = Long.numberOfTrailingZeros(~(bits >>> start));
+                bits &= length == 64 ? 0L : ~(((1L << length) - 1) << start);
+                
+                int x0 = start * cellSize;
+                int x1 = Math.min(width, (start + length) * cellSize);
+                if (spriteBatch != null) {
+                    spriteBatch.draw(region.getTexture(), getX() + x0, getY() + y0, x1 - x0, y1 - y0,
+                            u + x0 * uScale, v + (height - y0) * vScale, u + x1 * uScale, v + (height - y1) * vScale);
+                } else {
+                    snapshot.add(region.getTexture(), u + x0 * uScale, v + (height - y1) * vScale, u + x1 * uScale, v + (height - y0) * vScale,
+                            getPreviousX() + x0, getPreviousY() + y0, getX() + x0, getY() + y0, x1 - x0, y1 - y0, WHITE);
+                }
+            }
+        }
     }
 
     @Override
@@ -56,11 +256,11 @@ public class BarricadeEntity extends Entity {
 
     @Override
     public void collision(Entity other) {
-        if (other instanceof BulletEntity) {
-            if (!other.isDestroyed()) {
-                other.dispose();
-                dispose();
-            }
-        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        region = null;
     }
 }
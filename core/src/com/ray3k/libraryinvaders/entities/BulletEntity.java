@@ -24,16 +24,18 @@
 
 package com.ray3k.libraryinvaders.entities;
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.utils.Array;
 import com.ray3k.libraryinvaders.Core;
 import com.ray3k.libraryinvaders.Entity;
+import com.ray3k.libraryinvaders.EntityManager;
 import com.ray3k.libraryinvaders.states.GameState;
 
 public class BulletEntity extends Entity {
-    private Entity parent;
+    public static final int CATEGORY = 1 << 4;
+    private long parent;
+    private boolean firedByPlayer;
     
     public BulletEntity(GameState gameState) {
         super(gameState.getEntityManager(), gameState.getCore());
@@ -44,6 +46,9 @@ public class BulletEntity extends Entity {
         setTextureRegion(getBullet());
         
         setCheckingCollisions(true);
+        setContinuousCollision(true);
+        setCollisionCategory(CATEGORY);
+        setCollisionMask(PlayerEntity.CATEGORY | EnemyEntity.CATEGORY | BarricadeEntity.CATEGORY | UfoEntity.CATEGORY);
         getCollisionBox().width = getTextureRegion().getRegionWidth();
         getCollisionBox().height = getTextureRegion().getRegionHeight();
     }
@@ -52,7 +57,7 @@ public class BulletEntity extends Entity {
     public void act(float delta) {
         if (getY() + getTextureRegion().getRegionHeight() < 0) {
             dispose();
-        } else if (getY() > Gdx.graphics.getHeight()) {
+        } else if (getY() > Core.WORLD_HEIGHT) {
             dispose();
         }
     }
@@ -73,17 +78,37 @@ public class BulletEntity extends Entity {
     public void collision(Entity other) {
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        parent = EntityManager.NULL_HANDLE;
+        firedByPlayer = false;
+    }
+
+    /**
+     * Returns the entity that fired this bullet, or null if it has since been
+     * removed.
+     */
     public Entity getParent() {
+        return getManager().get(parent);
+    }
+
+    public long getParentHandle() {
         return parent;
     }
 
     public void setParent(Entity parent) {
-        this.parent = parent;
+        this.parent = parent.getHandle();
+        firedByPlayer = parent instanceof PlayerEntity;
+    }
+
+    public boolean isFiredByPlayer() {
+        return firedByPlayer;
     }
     
     private TextureRegion getBullet() {
         Array<String> names = getCore().getImagePacks().get(Core.DATA_PATH + "/lasers");
         
-        return getCore().getAtlas().findRegion(names.random());
+        return getCore().getAtlas().findRegion(random(names));
     }
 }
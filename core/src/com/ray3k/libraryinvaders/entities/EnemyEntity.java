@@ -24,27 +24,46 @@
 
 package com.ray3k.libraryinvaders.entities;
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.audio.Sound;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
-import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.utils.Array;
+import com.ray3k.libraryinvaders.ContactManager.ContactAdapter;
 import com.ray3k.libraryinvaders.Core;
 import com.ray3k.libraryinvaders.Entity;
 import com.ray3k.libraryinvaders.states.GameState;
 
 public class EnemyEntity extends Entity {
-    private static final float CREEP_AMOUNT = 15.0f;
+    public static final int CATEGORY = 1 << 2;
+    public static final ContactAdapter<EnemyEntity, BarricadeEntity> BARRICADE_COLLISION = new ContactAdapter<EnemyEntity, BarricadeEntity>() {
+        @Override
+        public void onContactBegin(EnemyEntity enemy, BarricadeEntity barricade) {
+            barricade.erase(enemy.getCollisionBox());
+        }
+
+        @Override
+        public void onContactStay(EnemyEntity enemy, BarricadeEntity barricade) {
+            barricade.erase(enemy.getCollisionBox());
+        }
+    };
+    public static final ContactAdapter<EnemyEntity, BulletEntity> BULLET_COLLISION = new ContactAdapter<EnemyEntity, BulletEntity>() {
+        @Override
+        public void onContactBegin(EnemyEntity enemy, BulletEntity bullet) {
+            if (bullet.isFiredByPlayer()) {
+                bullet.dispose();
+                enemy.dispose();
+                enemy.getManager().playSound(enemy.hitSound);
+                enemy.gameState.addScore(POINT_WORTH);
+            }
+        }
+    };
     private static final float BULLET_TIMER_MIN = 20.0f;
     private static final float BULLET_TIMER_MAX = 40.0f;
     private static final int POINT_WORTH = 10;
     private float bulletTimer;
-    private boolean queueBounce;
     private GameState gameState;
     private Sound bulletSound;
     private Sound hitSound;
-    public static float speedMultiplier = 1.0f;
 
     public EnemyEntity(GameState gameState) {
         super(gameState.getEntityManager(), gameState.getCore());
@@ -54,12 +73,13 @@ public class EnemyEntity extends Entity {
     @Override
     public void create() {
         setCheckingCollisions(true);
+        setCollisionCategory(CATEGORY);
+        setCollisionMask(PlayerEntity.CATEGORY | BulletEntity.CATEGORY | BarricadeEntity.CATEGORY);
         setTextureRegion(getEnemy());
-        setMotion(60.0f * speedMultiplier, 0.0f);
         
         getCollisionBox().setSize(getTextureRegion().getRegionWidth(), getTextureRegion().getRegionHeight());
         
-        bulletTimer = MathUtils.random(0.0f, BULLET_TIMER_MAX);
+        bulletTimer = random(0.0f, BULLET_TIMER_MAX);
         
         bulletSound = getCore().getAssetManager().get(Core.DATA_PATH + "/sfx/enemy-shot.wav", Sound.class);
         hitSound = getCore().getAssetManager().get(Core.DATA_PATH + "/sfx/enemy-hit.wav", Sound.class);
@@ -67,21 +87,13 @@ public class EnemyEntity extends Entity {
 
     @Override
     public void act(float delta) {
-        if (getX() + getTextureRegion().getRegionWidth() > Gdx.graphics.getWidth() || getX() < 0.0f) {
-            for (Entity ent : gameState.getEntityManager().getEntities()) {
-                if (ent instanceof EnemyEntity) {
-                    ((EnemyEntity) ent).queueBounce = true;
-                }
-            }
-        }
-        
         bulletTimer -= delta;
         if (bulletTimer < 0) {
-            bulletTimer = MathUtils.random(BULLET_TIMER_MIN, BULLET_TIMER_MAX);
+            bulletTimer = random(BULLET_TIMER_MIN, BULLET_TIMER_MAX);
             
-            bulletSound.play();
+            getManager().playSound(bulletSound);
             
-            BulletEntity bullet = new BulletEntity(gameState);
+            BulletEntity bullet = getManager().obtain(BulletEntity.class);
             bullet.setParent(this);
             bullet.setPosition(getX() + getTextureRegion().getRegionWidth() / 2.0f, getY() + getTextureRegion().getRegionHeight() / 2.0f);
             
@@ -89,10 +101,9 @@ public class EnemyEntity extends Entity {
         }
         
         if (getY() + getTextureRegion().getRegionHeight() < 0) {
-            for (Entity entity : gameState.getEntityManager().getEntities()) {
-                if (entity instanceof PlayerEntity) {
-                    entity.dispose();
-                }
+            PlayerEntity player = getManager().first(PlayerEntity.class);
+            if (player != null) {
+                player.dispose();
             }
             dispose();
         }
@@ -100,11 +111,6 @@ public class EnemyEntity extends Entity {
 
     @Override
     public void act_end(float delta) {
-        if (queueBounce) {
-            queueBounce = false;
-            setXspeed(-getXspeed());
-            addY(-CREEP_AMOUNT);
-        }
     }
 
     @Override
@@ -117,21 +123,11 @@ public class EnemyEntity extends Entity {
 
     @Override
     public void collision(Entity other) {
-        if (other instanceof BarricadeEntity) {
-            other.dispose();
-        } else if (other instanceof BulletEntity) {
-            if (((BulletEntity) other).getParent() instanceof PlayerEntity) {
-                other.dispose();
-                dispose();
-                hitSound.play();
-                gameState.addScore(POINT_WORTH);
-            }
-        }
     }
     
     private TextureRegion getEnemy() {
         Array<String> names = getCore().getImagePacks().get(Core.DATA_PATH + "/enemies");
         
-        return getCore().getAtlas().findRegion(names.random());
+        return getCore().getAtlas().findRegion(random(names));
     }
 }
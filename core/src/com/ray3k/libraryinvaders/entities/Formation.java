@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Raymond Buckley.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.ray3k.libraryinvaders.entities;
+
+import com.badlogic.gdx.utils.LongArray;
+import com.ray3k.libraryinvaders.Core;
+import com.ray3k.libraryinvaders.Entity;
+import com.ray3k.libraryinvaders.EntityManager;
+
+/**
+ * Moves a wave of enemies as one block. Once per tick the formation measures
+ * the horizontal extent of its living members and, when the block reaches a
+ * screen edge, reverses every member and creeps the wave down.
+ */
+public class Formation {
+    private static final float CREEP_AMOUNT = 15.0f;
+    private final EntityManager manager;
+    private final LongArray members;
+    private float speed;
+    private float direction;
+    private float minX;
+    private float maxX;
+    
+    public Formation(EntityManager manager) {
+        this.manager = manager;
+        members = new LongArray();
+        direction = 1.0f;
+    }
+    
+    /**
+     * Removes every member and starts the next wave moving right at the given
+     * speed.
+     */
+    public void clear(float speed) {
+        members.clear();
+        this.speed = speed;
+        direction = 1.0f;
+    }
+    
+    public void add(EnemyEntity enemy) {
+        members.add(enemy.getHandle());
+        enemy.setXspeed(speed * direction);
+    }
+    
+    /**
+     * Drops members that have been destroyed, then bounces the wave if it is
+     * moving into a screen edge.
+     */
+    public void act() {
+        minX = Float.MAX_VALUE;
+        maxX = -Float.MAX_VALUE;
+        
+        int write = 0;
+        for (int i = 0; i < members.size; i++) {
+            long handle = members.get(i);
+            Entity member = manager.getLiving(handle);
+            if (member != null) {
+                members.set(write++, handle);
+                minX = Math.min(minX, member.getX());
+                maxX = Math.max(maxX, member.getX() + member.getTextureRegion().getRegionWidth());
+            }
+        }
+        members.size = write;
+        
+        if (write > 0 && ((maxX > Core.WORLD_WIDTH && direction > 0.0f) || (minX < 0.0f && direction < 0.0f))) {
+            direction = -direction;
+            for (int i = 0; i < members.size; i++) {
+                Entity member = manager.get(members.get(i));
+                member.setXspeed(speed * direction);
+                member.addY(-CREEP_AMOUNT);
+            }
+        }
+    }
+    
+    public int size() {
+        return members.size;
+    }
+
+    public float getSpeed() {
+        return speed;
+    }
+
+    public float getDirection() {
+        return direction;
+    }
+
+    /**
+     * Left edge of the living members as of the last {@link #act()}.
+     */
+    public float getMinX() {
+        return minX;
+    }
+
+    /**
+     * Right edge of the living members as of the last {@link #act()}.
+     */
+    public float getMaxX() {
+        return maxX;
+    }
+}
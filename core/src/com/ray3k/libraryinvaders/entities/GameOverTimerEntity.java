@@ -32,11 +32,18 @@ import com.ray3k.libraryinvaders.states.GameState;
 public class GameOverTimerEntity extends Entity {
     private float time;
     private GameState gameState;
+    private final Runnable showGameOver;
     
-    public GameOverTimerEntity(GameState gameState, float time) {
+    public GameOverTimerEntity(GameState gameState) {
         super(gameState.getEntityManager(), gameState.getCore());
         this.gameState = gameState;
-        this.time = time;
+        showGameOver = new Runnable() {
+            @Override
+            public void run() {
+                ((GameOverState) getCore().getStateManager().getState("game-over")).setScore(GameOverTimerEntity.this.gameState.getScore());
+                getCore().getStateManager().loadState("game-over");
+            }
+        };
     }
     
     @Override
@@ -48,8 +55,7 @@ public class GameOverTimerEntity extends Entity {
         time -= delta;
         if (time < 0) {
             dispose();
-            ((GameOverState) getCore().getStateManager().getState("game-over")).setScore(gameState.getScore());
-            getCore().getStateManager().loadState("game-over");
+            getManager().post(showGameOver);
         }
     }
 
@@ -69,4 +75,18 @@ public class GameOverTimerEntity extends Entity {
     public void collision(Entity other) {
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        time = 0.0f;
+    }
+
+    public float getTime() {
+        return time;
+    }
+
+    public void setTime(float time) {
+        this.time = time;
+    }
+
 }
@@ -24,39 +24,57 @@
 
 package com.ray3k.libraryinvaders.entities;
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input.Keys;
 import com.badlogic.gdx.audio.Sound;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
-import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongArray;
+import com.ray3k.libraryinvaders.ContactManager.ContactAdapter;
 import com.ray3k.libraryinvaders.Core;
 import com.ray3k.libraryinvaders.Entity;
 import com.ray3k.libraryinvaders.InputManager;
 import com.ray3k.libraryinvaders.states.GameState;
-import java.util.Iterator;
 
 public class PlayerEntity extends Entity implements InputManager.KeyActionListener {
+    public static final int CATEGORY = 1 << 1;
+    public static final ContactAdapter<PlayerEntity, BulletEntity> BULLET_COLLISION = new ContactAdapter<PlayerEntity, BulletEntity>() {
+        @Override
+        public void onContactBegin(PlayerEntity player, BulletEntity bullet) {
+            if (bullet.getParentHandle() != player.getHandle()) {
+                bullet.dispose();
+                player.dispose();
+            }
+        }
+    };
+    public static final ContactAdapter<PlayerEntity, EnemyEntity> ENEMY_COLLISION = new ContactAdapter<PlayerEntity, EnemyEntity>() {
+        @Override
+        public void onContactBegin(PlayerEntity player, EnemyEntity enemy) {
+            enemy.dispose();
+            player.dispose();
+        }
+    };
     private Sound damageSound;
     private Sound shotSound;
     private GameState gameState;
-    private Array<BulletEntity> myBullets;
+    private final LongArray myBullets;
     private static final int MAX_BULLETS = 1;
     
     public PlayerEntity(GameState gameState) {
         super(gameState.getEntityManager(), gameState.getCore());
         this.gameState = gameState;
+        myBullets = new LongArray();
     }
 
     @Override
     public void create() {
-        myBullets = new Array<BulletEntity>();
         setCheckingCollisions(true);
-        setTextureRegion(getCore().getAtlas().findRegion(((GameState) getCore().getStateManager().getState("game")).getSelectedCharacter()));
+        setCollisionCategory(CATEGORY);
+        setCollisionMask(BulletEntity.CATEGORY | EnemyEntity.CATEGORY);
+        setTextureRegion(gameState.getCharacterRegion());
         
         damageSound = getCore().getAssetManager().get(Core.DATA_PATH + "/sfx/player-hit.wav", Sound.class);
         shotSound = getCore().getAssetManager().get(Core.DATA_PATH + "/sfx/player-shot.wav", Sound.class);
         
-        setX(Gdx.graphics.getWidth() / 2.0f - getTextureRegion().getRegionWidth() / 2.0f);
+        setX(Core.WORLD_WIDTH / 2.0f - getTextureRegion().getRegionWidth() / 2.0f);
         setY(30.0f);
         
         getCollisionBox().setSize(getTextureRegion().getRegionWidth(), getTextureRegion().getRegionHeight());
@@ -66,9 +84,9 @@ public class PlayerEntity extends Entity implements InputManager.KeyActionListen
 
     @Override
     public void act(float delta) {
-        if (Gdx.input.isKeyPressed(Keys.LEFT)) {
+        if (gameState.getInputManager().isKeyPressed(Keys.LEFT)) {
             setMotion(200.0f, 180.0f);
-        } else if (Gdx.input.isKeyPressed(Keys.RIGHT)) {
+        } else if (gameState.getInputManager().isKeyPressed(Keys.RIGHT)) {
             setMotion(200.0f, 0.0f);
         } else {
             setMotion(0.0f, 0.0f);
@@ -87,44 +105,38 @@ public class PlayerEntity extends Entity implements InputManager.KeyActionListen
 
     @Override
     public void destroy() {
-        damageSound.play();
-        new WhiteFlashEntity(gameState);
-        new GameOverTimerEntity(gameState, 1.0f);
+        getManager().playSound(damageSound);
+        getManager().obtain(WhiteFlashEntity.class);
+        getManager().obtain(GameOverTimerEntity.class).setTime(1.0f);
     }
 
     @Override
     public void collision(Entity other) {
-        if (other instanceof BulletEntity) {
-            BulletEntity bullet = (BulletEntity) other;
-            if (bullet.getParent() != this) {
-                bullet.dispose();
-                dispose();
-            }
-        } else if (other instanceof EnemyEntity) {
-            EnemyEntity enemy = (EnemyEntity) other;
-            enemy.dispose();
-            dispose();
-        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        myBullets.clear();
+        gameState.getInputManager().removeKeyActionListener(this);
     }
 
     @Override
     public void keyPressed(int key) {
         if (!isDestroyed() && key == Keys.SPACE) {
-            Iterator<BulletEntity> iter = myBullets.iterator();
-            while (iter.hasNext()) {
-                BulletEntity bullet = iter.next();
-                if (bullet.isDestroyed()) {
-                    iter.remove();
+            for (int i = myBullets.size - 1; i >= 0; i--) {
+                if (getManager().getLiving(myBullets.get(i)) == null) {
+                    myBullets.removeIndex(i);
                 }
             }
             
             if (myBullets.size < MAX_BULLETS) {
-                BulletEntity bullet = new BulletEntity(gameState);
+                BulletEntity bullet = getManager().obtain(BulletEntity.class);
                 bullet.setParent(this);
                 bullet.setPosition(getX() + getTextureRegion().getRegionWidth() / 2.0f - bullet.getTextureRegion().getRegionWidth() / 2.0f, getY() + getTextureRegion().getRegionHeight() / 2.0f - bullet.getTextureRegion().getRegionHeight() / 2.0f);
                 bullet.setMotion(500.0f, 90.0f);
-                shotSound.play();
-                myBullets.add(bullet);
+                getManager().playSound(shotSound);
+                myBullets.add(bullet.getHandle());
             }
         }
     }
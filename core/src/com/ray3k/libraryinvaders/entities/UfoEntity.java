@@ -27,13 +27,25 @@ package com.ray3k.libraryinvaders.entities;
 import com.badlogic.gdx.audio.Sound;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
-import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.utils.Array;
+import com.ray3k.libraryinvaders.ContactManager.ContactAdapter;
 import com.ray3k.libraryinvaders.Core;
 import com.ray3k.libraryinvaders.Entity;
 import com.ray3k.libraryinvaders.states.GameState;
 
 public class UfoEntity extends Entity {
+    public static final int CATEGORY = 1 << 5;
+    public static final ContactAdapter<UfoEntity, BulletEntity> BULLET_COLLISION = new ContactAdapter<UfoEntity, BulletEntity>() {
+        @Override
+        public void onContactBegin(UfoEntity ufo, BulletEntity bullet) {
+            if (bullet.isFiredByPlayer()) {
+                bullet.dispose();
+                ufo.dispose();
+                ufo.getManager().playSound(ufo.hitSound);
+                ufo.gameState.addScore(POINT_WORTH);
+            }
+        }
+    };
     private static final float BULLET_TIMER_MIN = 1.0f;
     private static final float BULLET_TIMER_MAX = 5.0f;
     private float bulletTimer;
@@ -50,12 +62,14 @@ public class UfoEntity extends Entity {
     @Override
     public void create() {
         setCheckingCollisions(true);
+        setCollisionCategory(CATEGORY);
+        setCollisionMask(BulletEntity.CATEGORY);
         setTextureRegion(getUfo());
         setMotion(90.0f, 180.0f);
         
         getCollisionBox().setSize(getTextureRegion().getRegionWidth(), getTextureRegion().getRegionHeight());
         
-        bulletTimer = MathUtils.random(0.0f, BULLET_TIMER_MAX);
+        bulletTimer = random(0.0f, BULLET_TIMER_MAX);
         
         bulletSound = getCore().getAssetManager().get(Core.DATA_PATH + "/sfx/enemy-shot.wav", Sound.class);
         hitSound = getCore().getAssetManager().get(Core.DATA_PATH + "/sfx/enemy-hit.wav", Sound.class);
@@ -69,11 +83,11 @@ public class UfoEntity extends Entity {
         
         bulletTimer -= delta;
         if (bulletTimer < 0) {
-            bulletTimer = MathUtils.random(BULLET_TIMER_MIN, BULLET_TIMER_MAX);
+            bulletTimer = random(BULLET_TIMER_MIN, BULLET_TIMER_MAX);
             
-            bulletSound.play();
+            getManager().playSound(bulletSound);
             
-            BulletEntity bullet = new BulletEntity(gameState);
+            BulletEntity bullet = getManager().obtain(BulletEntity.class);
             bullet.setParent(this);
             bullet.setPosition(getX() + getTextureRegion().getRegionWidth() / 2.0f, getY() + getTextureRegion().getRegionHeight() / 2.0f);
             
@@ -95,19 +109,11 @@ public class UfoEntity extends Entity {
 
     @Override
     public void collision(Entity other) {
-        if (other instanceof BulletEntity) {
-            if (((BulletEntity) other).getParent() instanceof PlayerEntity) {
-                other.dispose();
-                dispose();
-                hitSound.play();
-                gameState.addScore(POINT_WORTH);
-            }
-        }
     }
 
     private TextureRegion getUfo() {
         Array<String> names = getCore().getImagePacks().get(Core.DATA_PATH + "/ufos");
         
-        return getCore().getAtlas().findRegion(names.random());
+        return getCore().getAtlas().findRegion(random(names));
     }
 }
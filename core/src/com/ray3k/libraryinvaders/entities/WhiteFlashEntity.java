@@ -1,10 +1,11 @@
 package com.ray3k.libraryinvaders.entities;
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.ray3k.libraryinvaders.Core;
 import com.ray3k.libraryinvaders.Entity;
+import com.ray3k.libraryinvaders.RenderSnapshot;
 import com.ray3k.libraryinvaders.states.GameState;
 
 /*
@@ -63,10 +64,16 @@ public class WhiteFlashEntity extends Entity {
     @Override
     public void draw(SpriteBatch spriteBatch, float delta) {
         spriteBatch.setColor(1.0f, 1.0f, 1.0f, life / LIFE_MAX);
-        spriteBatch.draw(region, 0.0f, 0.0f, 0.0f, 0.0f, Gdx.graphics.getWidth(), Gdx.graphics.getHeight(), 1.0f, 1.0f, 0.0f);
+        spriteBatch.draw(region, 0.0f, 0.0f, 0.0f, 0.0f, Core.WORLD_WIDTH, Core.WORLD_HEIGHT, 1.0f, 1.0f, 0.0f);
         spriteBatch.setColor(Color.WHITE);
     }
 
+    @Override
+    public void snapshot(RenderSnapshot snapshot) {
+        float color = Color.toFloatBits(1.0f, 1.0f, 1.0f, life / LIFE_MAX);
+        snapshot.add(region.getTexture(), region.getU(), region.getV(), region.getU2(), region.getV2(), 0.0f, 0.0f, 0.0f, 0.0f, Core.WORLD_WIDTH, Core.WORLD_HEIGHT, color);
+    }
+
     @Override
     public void destroy() {
     }
@@ -74,4 +81,10 @@ public class WhiteFlashEntity extends Entity {
     @Override
     public void collision(Entity other) {
     }
+
+    @Override
+    public void reset() {
+        super.reset();
+        region = null;
+    }
 }
@@ -25,30 +25,50 @@ package com.ray3k.libraryinvaders.states;
 
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.InputMultiplexer;
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.assets.loaders.TextureLoader.TextureParameter;
+import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.scenes.scene2d.Stage;
 import com.badlogic.gdx.scenes.scene2d.ui.Label;
 import com.badlogic.gdx.scenes.scene2d.ui.Skin;
 import com.badlogic.gdx.scenes.scene2d.ui.Table;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.StringBuilder;
+import com.badlogic.gdx.utils.viewport.FitViewport;
 import com.badlogic.gdx.utils.viewport.ScreenViewport;
 import com.badlogic.gdx.utils.viewport.Viewport;
 import com.ray3k.libraryinvaders.Core;
-import com.ray3k.libraryinvaders.Entity;
 import com.ray3k.libraryinvaders.EntityManager;
+import com.ray3k.libraryinvaders.EntityPool;
+import com.ray3k.libraryinvaders.FrameProfiler;
 import com.ray3k.libraryinvaders.InputManager;
+import com.ray3k.libraryinvaders.RenderSnapshot;
+import com.ray3k.libraryinvaders.ReplayReader;
+import com.ray3k.libraryinvaders.ReplayWriter;
+import com.ray3k.libraryinvaders.SimulationThread;
 import com.ray3k.libraryinvaders.State;
 import com.ray3k.libraryinvaders.entities.BarricadeEntity;
+import com.ray3k.libraryinvaders.entities.BulletEntity;
 import com.ray3k.libraryinvaders.entities.EnemyEntity;
+import com.ray3k.libraryinvaders.entities.Formation;
+import com.ray3k.libraryinvaders.entities.GameOverTimerEntity;
 import com.ray3k.libraryinvaders.entities.PlayerEntity;
 import com.ray3k.libraryinvaders.entities.UfoEntity;
+import com.ray3k.libraryinvaders.entities.WhiteFlashEntity;
 
 public class GameState extends State {
     private String selectedCharacter;
+    private String characterPath;
+    private TextureRegion characterRegion;
     private int score;
+    private int shownScore;
     private static int highscore = 0;
     private OrthographicCamera camera;
     private Viewport viewport;
@@ -57,46 +77,104 @@ public class GameState extends State {
     private Stage stage;
     private Table table;
     private Label scoreLabel;
+    private final StringBuilder scoreText;
     private EntityManager entityManager;
     private float respawnTimer;
+    private Formation formation;
+    private int wave;
+    private long seed;
+    private FileHandle recordFile;
+    private FileHandle replayFile;
+    private ReplayWriter replayWriter;
+    private ReplayReader replayReader;
+    private long savedMsPerUpdate;
+    private SimulationThread simulationThread;
+    private static final float WAVE_SPEED = 60.0f;
     private float ufoTimer;
     private static final float UFO_MAX_TIME = 20.0f;
     
     public GameState(Core core) {
         super(core);
+        scoreText = new StringBuilder();
+        seed = MathUtils.random.nextLong();
     }
     
     @Override
     public void start() {
-        EnemyEntity.speedMultiplier = 1.0f;
+        wave = 1;
         respawnTimer = -1;
         score = 0;
+        shownScore = 0;
         
         ufoTimer = UFO_MAX_TIME;
+        simulationThread = getCore().getSimulationThread();
         
         inputManager = new InputManager();
         
+        if (replayFile != null) {
+            replayReader = new ReplayReader(replayFile);
+            seed = replayReader.getSeed();
+            selectedCharacter = replayReader.getCharacter();
+            //the replay's tick length only lasts until playback stops
+            savedMsPerUpdate = getCore().getMsPerUpdate();
+            getCore().setMsPerUpdate(replayReader.getMsPerUpdate());
+        } else if (recordFile != null) {
+            replayWriter = new ReplayWriter(recordFile, seed, selectedCharacter, getCore().getMsPerUpdate());
+            inputManager.setRecorder(replayWriter);
+        }
+        
+        loadCharacter();
+        
         camera = new OrthographicCamera();
-        viewport = new ScreenViewport(camera);
+        viewport = new FitViewport(Core.WORLD_WIDTH, Core.WORLD_HEIGHT, camera);
         viewport.update(Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
         viewport.apply();
         
         camera.position.set(camera.viewportWidth / 2, camera.viewportHeight / 2, 0);
         
         skin = getCore().getAssetManager().get(Core.DATA_PATH + "/skin/skin.json", Skin.class);
-        stage = new Stage(new ScreenViewport());
+        if (stage == null) {
+            stage = new Stage(new ScreenViewport());
+            
+            table = new Table();
+            table.setFillParent(true);
+            stage.addActor(table);
+            
+            createStageElements();
+        } else {
+            stage.getViewport().update(Gdx.graphics.getWidth(), Gdx.graphics.getHeight(), true);
+        }
+        scoreLabel.setText("0");
         
         InputMultiplexer inputMultiplexer = new InputMultiplexer();
-        inputMultiplexer.addProcessor(inputManager);
+        if (replayReader == null) {
+            inputMultiplexer.addProcessor(inputManager);
+        }
         inputMultiplexer.addProcessor(stage);
         Gdx.input.setInputProcessor(inputMultiplexer);
         
-        table = new Table();
-        table.setFillParent(true);
-        stage.addActor(table);
-        
-        entityManager = new EntityManager();
-        PlayerEntity player = new PlayerEntity(this);
+        //the manager and stage outlive a game, so restarting reuses their pools
+        if (entityManager == null) {
+            entityManager = new EntityManager();
+            //two cells of margin cover entities entering and leaving the screen
+            float margin = entityManager.getCellSize() * 2.0f;
+            entityManager.reserveCells(-margin, -margin, Core.WORLD_WIDTH + margin * 2.0f, Core.WORLD_HEIGHT + margin * 2.0f);
+            registerCollisionHandlers();
+            registerPools();
+        } else {
+            entityManager.clear();
+        }
+        entityManager.setSeed(seed);
+        if (simulationThread != null) {
+            entityManager.setSoundQueue(simulationThread.getSoundQueue());
+            //the render thread's profiler is not safe to time from the simulation thread
+            entityManager.setProfiler(new FrameProfiler());
+        } else {
+            entityManager.setSoundQueue(null);
+            entityManager.setProfiler(getCore().getProfiler());
+        }
+        formation = new Formation(entityManager);
+        PlayerEntity player = entityManager.obtain(PlayerEntity.class);
         
         spawnEntities();
         
@@ -104,19 +182,19 @@ public class GameState extends State {
         float barricadesWidth = 0.0f;
         final int BARRICADE_COUNT = 4;
         for (int i = 0; i < BARRICADE_COUNT; i++) {
-            BarricadeEntity barricade = new BarricadeEntity(this);
+            BarricadeEntity barricade = entityManager.obtain(BarricadeEntity.class);
             Array<String> names = getCore().getImagePacks().get(Core.DATA_PATH + "/barricades");
-            barricade.setTextureRegion(getCore().getAtlas().findRegion(names.random()));
+            barricade.setRegion(getCore().getAtlas().findRegion(barricade.random(names)));
             
             barricade.setX(barricadesWidth);
             barricade.setY(30.0f + player.getTextureRegion().getRegionHeight() + 35.0f);
 
-            barricadesWidth += barricade.getTextureRegion().getRegionWidth();
+            barricadesWidth += barricade.getWidth();
             
             barricades.add(barricade);
         }
         
-        final float GAP = (Gdx.graphics.getWidth() - barricadesWidth - 100.0f) / (BARRICADE_COUNT - 1);
+        final float GAP = (Core.WORLD_WIDTH - barricadesWidth - 100.0f) / (BARRICADE_COUNT - 1);
         
         for (int i = 1; i < barricades.size; i++) {
             BarricadeEntity barricade = barricades.get(i);
@@ -124,22 +202,76 @@ public class GameState extends State {
             barricadesWidth += GAP;
         }
         
-        final float addX = (Gdx.graphics.getWidth() - barricadesWidth) / 2.0f;
+        final float addX = (Core.WORLD_WIDTH - barricadesWidth) / 2.0f;
         for (BarricadeEntity barricade : barricades) {
             barricade.addX(addX);
-            subdivideBarricade(barricade);
         }
-        
-        createStageElements();
+    }
+    
+    private void registerPools() {
+        entityManager.addPool(PlayerEntity.class, new EntityPool<PlayerEntity>() {
+            @Override
+            protected PlayerEntity newObject() {
+                return new PlayerEntity(GameState.this);
+            }
+        });
+        entityManager.addPool(EnemyEntity.class, new EntityPool<EnemyEntity>() {
+            @Override
+            protected EnemyEntity newObject() {
+                return new EnemyEntity(GameState.this);
+            }
+        });
+        entityManager.addPool(UfoEntity.class, new EntityPool<UfoEntity>() {
+            @Override
+            protected UfoEntity newObject() {
+                return new UfoEntity(GameState.this);
+            }
+        });
+        entityManager.addPool(BulletEntity.class, new EntityPool<BulletEntity>() {
+            @Override
+            protected BulletEntity newObject() {
+                return new BulletEntity(GameState.this);
+            }
+        });
+        entityManager.addPool(BarricadeEntity.class, new EntityPool<BarricadeEntity>() {
+            @Override
+            protected BarricadeEntity newObject() {
+                return new BarricadeEntity(GameState.this);
+            }
+        });
+        entityManager.addPool(WhiteFlashEntity.class, new EntityPool<WhiteFlashEntity>() {
+            @Override
+            protected WhiteFlashEntity newObject() {
+                return new WhiteFlashEntity(GameState.this);
+            }
+        });
+        entityManager.addPool(GameOverTimerEntity.class, new EntityPool<GameOverTimerEntity>() {
+            @Override
+            protected GameOverTimerEntity newObject() {
+                return new GameOverTimerEntity(GameState.this);
+            }
+        });
+    }
+    
+    private void registerCollisionHandlers() {
+        entityManager.addContactHandler(PlayerEntity.class, BulletEntity.class, PlayerEntity.BULLET_COLLISION);
+        entityManager.addContactHandler(PlayerEntity.class, EnemyEntity.class, PlayerEntity.ENEMY_COLLISION);
+        entityManager.addContactHandler(EnemyEntity.class, BarricadeEntity.class, EnemyEntity.BARRICADE_COLLISION);
+        entityManager.addContactHandler(EnemyEntity.class, BulletEntity.class, EnemyEntity.BULLET_COLLISION);
+        entityManager.addContactHandler(BarricadeEntity.class, BulletEntity.class, BarricadeEntity.BULLET_COLLISION);
+        entityManager.addContactHandler(UfoEntity.class, BulletEntity.class, UfoEntity.BULLET_COLLISION);
     }
     
     private void spawnEntities() {
-        float y = Gdx.graphics.getHeight() - 70.0f;
+        formation.clear(WAVE_SPEED * wave);
+        
+        float y = Core.WORLD_HEIGHT - 70.0f;
         for (int row = 0; row < 4; row++) {
             float rowHeight = 0.0f;
             float x = 0.0f;
             for (int column = 0; column < 7; column++) {
-                EnemyEntity enemy = new EnemyEntity(this);
+                EnemyEntity enemy = entityManager.obtain(EnemyEntity.class);
+                formation.add(enemy);
                 enemy.setX(x);
                 enemy.setY(y - enemy.getTextureRegion().getRegionHeight());
                 x += enemy.getTextureRegion().getRegionWidth() + 30.0f;
@@ -167,56 +299,143 @@ public class GameState extends State {
         
         camera.update();
         spriteBatch.setProjectionMatrix(camera.combined);
-        spriteBatch.begin();
-        entityManager.draw(spriteBatch, delta);
-        spriteBatch.end();
+        FrameProfiler profiler = getCore().getProfiler();
+        if (simulationThread != null) {
+            //entities belong to the simulation thread, so only its snapshot is drawn
+            long time = profiler.start();
+            stage.act(Gdx.graphics.getDeltaTime());
+            profiler.stop(FrameProfiler.STAGE_ACT, time);
+            
+            RenderSnapshot snapshot = simulationThread.getSnapshot();
+            if (snapshot.getGeneration() == getCore().getStateManager().getGeneration()) {
+                showScore(snapshot.getScore());
+                
+                time = profiler.start();
+                spriteBatch.begin();
+                snapshot.draw(spriteBatch, simulationThread.getAlpha(snapshot));
+                spriteBatch.end();
+                profiler.stop(FrameProfiler.DRAW, time);
+            }
+        } else {
+            showScore(score);
+            
+            spriteBatch.begin();
+            entityManager.draw(spriteBatch, delta, camera);
+            spriteBatch.end();
+        }
         
+        long time = profiler.start();
         stage.draw();
+        profiler.stop(FrameProfiler.STAGE_DRAW, time);
     }
 
     @Override
     public void act(float delta) {
+        if (replayReader != null) {
+            if (replayReader.isFinished()) {
+                getCore().getStateManager().loadState("menu");
+                return;
+            }
+            replayReader.apply(inputManager);
+        }
+        inputManager.update();
+        
         entityManager.act(delta);
+        formation.act();
         
-        stage.act(delta);
+        if (simulationThread == null) {
+            FrameProfiler profiler = getCore().getProfiler();
+            long time = profiler.start();
+            stage.act(delta);
+            profiler.stop(FrameProfiler.STAGE_ACT, time);
+        }
         
         if (respawnTimer > 0) {
             respawnTimer -= delta;
             
             if (respawnTimer <= 0) {
-                EnemyEntity.speedMultiplier += 1.0f;
+                wave++;
                 spawnEntities();
                 respawnTimer = -1;
             }
         } else {
-            boolean setTimer = true;
-            for (Entity entity : entityManager.getEntities()) {
-                if (entity instanceof EnemyEntity) {
-                    setTimer = false;
-                    break;
-                }
-            }
-            
-            if (setTimer) {
+            if (entityManager.count(EnemyEntity.class) == 0) {
                 respawnTimer = 2.0f;
             }
         }
         
         ufoTimer -= delta;
         if (ufoTimer <= 0) {
-            UfoEntity ufo = new UfoEntity(this);
-            ufo.setPosition(Gdx.graphics.getWidth(), Gdx.graphics.getHeight() - ufo.getTextureRegion().getRegionHeight() - 25.0f);
+            UfoEntity ufo = entityManager.obtain(UfoEntity.class);
+            ufo.setPosition(Core.WORLD_WIDTH, Core.WORLD_HEIGHT - ufo.getTextureRegion().getRegionHeight() - 25.0f);
             ufoTimer = UFO_MAX_TIME;
         }
+        
+        if (replayWriter != null) {
+            replayWriter.endTick();
+        }
+    }
+
+    @Override
+    public boolean isSimulated() {
+        return true;
+    }
+
+    @Override
+    public void snapshot(RenderSnapshot snapshot) {
+        entityManager.snapshot(snapshot);
+        snapshot.setScore(score);
     }
 
     @Override
     public void dispose() {
+        if (entityManager != null) {
+            entityManager.dispose();
+        }
+        if (stage != null) {
+            stage.dispose();
+            stage = null;
+        }
     }
 
     @Override
     public void stop() {
-        stage.dispose();
+        seed = MathUtils.random.nextLong();
+        if (replayWriter != null) {
+            replayWriter.close();
+            replayWriter = null;
+        }
+        if (replayReader != null) {
+            replayReader.close();
+            replayReader = null;
+            getCore().setMsPerUpdate(savedMsPerUpdate);
+            replayFile = null;
+        }
+        entityManager.dispose();
+        
+        getCore().getAssetManager().unload(characterPath);
+        characterPath = null;
+        characterRegion = null;
+    }
+    
+    /**
+     * Decodes and uploads the selected character at full size. It is the only
+     * character image in memory, and only while the game runs.
+     */
+    private void loadCharacter() {
+        FileHandle file = getCore().getCharacterFile(selectedCharacter);
+        if (file == null) {
+            throw new GdxRuntimeException("Character not found: " + selectedCharacter);
+        }
+        characterPath = file.path();
+        TextureParameter parameter = new TextureParameter();
+        parameter.minFilter = Texture.TextureFilter.Linear;
+        parameter.magFilter = Texture.TextureFilter.Linear;
+        
+        AssetManager assetManager = getCore().getAssetManager();
+        assetManager.load(characterPath, Texture.class, parameter);
+        assetManager.finishLoading();
+        characterRegion = new TextureRegion(assetManager.get(characterPath, Texture.class));
     }
     
     @Override
@@ -230,10 +449,66 @@ public class GameState extends State {
         return selectedCharacter;
     }
 
+    /**
+     * Returns the selected character's full size image while the game runs.
+     */
+    public TextureRegion getCharacterRegion() {
+        return characterRegion;
+    }
+
     public void setSelectedCharacter(String selectedCharacter) {
         this.selectedCharacter = selectedCharacter;
     }
 
+    /**
+     * Returns the seed of the current game, or of the next one if no game is
+     * running.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets the seed of the next game. Every random choice in a game comes from
+     * this seed, so the same seed and the same input play the same game. Each
+     * game picks a new seed once it stops.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public FileHandle getRecordFile() {
+        return recordFile;
+    }
+
+    /**
+     * Sets the file each game's input is recorded to, or null to not record.
+     * The file is overwritten when the next game starts.
+     */
+    public void setRecordFile(FileHandle recordFile) {
+        this.recordFile = recordFile;
+    }
+
+    public FileHandle getReplayFile() {
+        return replayFile;
+    }
+
+    /**
+     * Sets a replay for the next game to play back instead of taking input.
+     * The replay sets the seed, character and tick length. Later games take
+     * input again.
+     */
+    public void setReplayFile(FileHandle replayFile) {
+        this.replayFile = replayFile;
+    }
+    
+    /**
+     * Returns the replay being played back, or null if the game takes input.
+     */
+    public ReplayReader getReplayReader() {
+        return replayReader;
+    }
+
     public EntityManager getEntityManager() {
         return entityManager;
     }
@@ -248,7 +523,6 @@ public class GameState extends State {
 
     public void setScore(int score) {
         this.score = score;
-        scoreLabel.setText(Integer.toString(score));
         if (score > highscore) {
             highscore = score;
         }
@@ -256,29 +530,21 @@ public class GameState extends State {
     
     public void addScore(int score) {
         this.score += score;
-        scoreLabel.setText(Integer.toString(this.score));
         if (this.score > highscore) {
             highscore = this.score;
         }
     }
-
-    private void subdivideBarricade(BarricadeEntity barricade) {
-        final int ROWS = 3;
-        final int COLUMNS = 5;
-        final int WIDTH = barricade.getTextureRegion().getRegionWidth() / COLUMNS;
-        final int HEIGHT = barricade.getTextureRegion().getRegionHeight() / ROWS;
-        
-        for (int y = 0; y < ROWS; y++) {
-            for (int x = 0; x < COLUMNS; x++) {
-                BarricadeEntity piece = new BarricadeEntity(this);
-                piece.setPosition(x * WIDTH + barricade.getX(), y * HEIGHT + barricade.getY());
-                piece.getCollisionBox().width = WIDTH;
-                piece.getCollisionBox().height = HEIGHT;
-                TextureRegion tex = new TextureRegion(barricade.getTextureRegion(), x * WIDTH, (ROWS - y - 1) * HEIGHT, WIDTH, HEIGHT);
-                piece.setTextureRegion(tex);
-            }
+    
+    /**
+     * Updates the score label when the score changes. Called while drawing,
+     * since the score may be changed by the simulation thread.
+     */
+    private void showScore(int score) {
+        if (score != shownScore) {
+            shownScore = score;
+            scoreText.setLength(0);
+            scoreText.append(score);
+            scoreLabel.setText(scoreText);
         }
-        
-        barricade.dispose();
     }
 }
\ No newline at end of file
@@ -1,13 +1,10 @@
 package com.ray3k.libraryinvaders.states;
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.assets.AssetManager;
-import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
-import com.badlogic.gdx.graphics.g2d.TextureAtlas;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.scenes.scene2d.Action;
 import com.badlogic.gdx.scenes.scene2d.Stage;
@@ -76,15 +73,15 @@ public class LoadingState extends State {
     @Override
     public void act(float delta) {
         AssetManager assetManager = getCore().getAssetManager();
-        progressBar.setValue(assetManager.getProgress());
+        progressBar.setValue((assetManager.getProgress() + getCore().getAtlasProgress()) / 2.0f);
         stage.act(delta);
-        if (!finishedLoading && assetManager.update()) {
+        if (!finishedLoading && assetManager.update() && getCore().updateAtlasLoaders()) {
             Action changeStateAction = new Action() {
                 @Override
                 public boolean act(float delta) {
                     if (nextState != null) {
                         finishedLoading = true;
-                        packPixmaps();
+                        getCore().packPixmaps();
                         getCore().getStateManager().loadState(nextState);
                     }
                     return true;
@@ -123,20 +120,6 @@ public class LoadingState extends State {
         return returnValue;
     }
     
-    private void packPixmaps() {
-        for (String directory : getCore().getImagePacks().keys()) {
-            for (String name : getCore().getImagePacks().get(directory)) {
-                FileHandle file = Gdx.files.local(directory + "/" + name + ".png");
-                getCore().getPixmapPacker().pack(file.nameWithoutExtension(), getCore().getAssetManager().get(file.path(), Pixmap.class));
-            }
-        }
-        
-        getCore().getPixmapPacker().pack("white", getCore().getAssetManager().get(Core.DATA_PATH + "/gfx/white.png", Pixmap.class));
-        
-        TextureAtlas atlas = getCore().getPixmapPacker().generateTextureAtlas(Texture.TextureFilter.Linear, Texture.TextureFilter.Linear, false);
-        getCore().setAtlas(atlas);
-    }
-
     @Override
     public void stop() {
         stage.dispose();
@@ -52,7 +52,6 @@ import com.badlogic.gdx.utils.JsonValue;
 import com.badlogic.gdx.utils.Scaling;
 import com.badlogic.gdx.utils.viewport.ScreenViewport;
 import com.ray3k.libraryinvaders.Core;
-import static com.ray3k.libraryinvaders.Core.DATA_PATH;
 import com.ray3k.libraryinvaders.State;
 
 public class MenuState extends State {
@@ -169,8 +168,8 @@ public class MenuState extends State {
         dialog.getContentTable().add(scrollPane).grow();
         
         final ButtonGroup<ImageTextButton> buttons = new ButtonGroup<ImageTextButton>();
-        for (String name : getCore().getImagePacks().get(DATA_PATH + "/characters")) {
-            Drawable drawable = new TextureRegionDrawable(getCore().getAtlas().findRegion(name));
+        for (String name : getCore().getImagePacks().get(Core.CHARACTERS_PATH)) {
+            Drawable drawable = new TextureRegionDrawable(getCore().getThumbnailAtlas().findRegion(name));
             Image image = new Image(drawable);
             ImageTextButton imageTextButton = new ImageTextButton(name, skin, "list");
             imageTextButton.getImageCell().setActor(image);
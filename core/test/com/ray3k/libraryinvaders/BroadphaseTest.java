@@ -0,0 +1,163 @@
+package com.ray3k.libraryinvaders;
+
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.math.RandomXS128;
+import com.badlogic.gdx.utils.Array;
+import com.ray3k.libraryinvaders.ContactManager.ContactHandler;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+
+/**
+ * Runs the same seeded scenes with the spatial hash and with the brute force
+ * loop and checks that both report the same contact events in the same order.
+ */
+public class BroadphaseTest {
+    private static final float WIDTH = 800.0f;
+    private static final float HEIGHT = 600.0f;
+    private static final float DELTA = 0.01f;
+    
+    private static class Mover extends Entity {
+        private final RandomXS128 random;
+        private final int number;
+        
+        public Mover(EntityManager manager, int number, long seed) {
+            super(manager, null);
+            this.number = number;
+            random = new RandomXS128(seed);
+            manager.addEntity(this);
+        }
+
+        @Override
+        public void create() {
+            setCheckingCollisions(true);
+        }
+
+        @Override
+        public void act(float delta) {
+            if (getX() < 0.0f || getX() > WIDTH) {
+                setXspeed(-getXspeed());
+            }
+            if (getY() < 0.0f || getY() > HEIGHT) {
+                setYspeed(-getYspeed());
+            }
+            if (random.nextInt(500) == 0) {
+                dispose();
+            }
+        }
+
+        @Override
+        public void act_end(float delta) {
+        }
+
+        @Override
+        public void draw(SpriteBatch spriteBatch, float delta) {
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public void collision(Entity other) {
+        }
+    }
+    
+    private static class Recorder implements ContactHandler<Mover, Mover> {
+        private final Array<String> events = new Array<String>();
+        
+        @Override
+        public void onContactBegin(Mover entity, Mover other) {
+            events.add("begin " + entity.number + " " + other.number);
+        }
+
+        @Override
+        public void onContactStay(Mover entity, Mover other) {
+            events.add("stay " + entity.number + " " + other.number);
+        }
+
+        @Override
+        public void onContactEnd(Mover entity, Mover other) {
+            events.add("end " + entity.number + " " + other.number);
+        }
+    }
+    
+    @Test
+    public void discreteMoversMatchBruteForce() {
+        for (long seed = 1; seed <= 3; seed++) {
+            assertSameContacts(seed, false);
+        }
+    }
+    
+    @Test
+    public void continuousMoversMatchBruteForce() {
+        for (long seed = 1; seed <= 3; seed++) {
+            assertSameContacts(seed, true);
+        }
+    }
+    
+    /**
+     * A bullet crossing the box another entity moved out of this tick. Only
+     * the start of the other entity's move is in the bullet's cells.
+     */
+    @Test
+    public void continuousMoverHitsStartOfSlowerMove() {
+        for (boolean broadphase : new boolean[] {false, true}) {
+            EntityManager manager = new EntityManager(16.0f);
+            manager.setBroadphaseEnabled(broadphase);
+            Recorder recorder = new Recorder();
+            manager.addContactHandler(Mover.class, Mover.class, recorder);
+            
+            Mover bullet = new Mover(manager, 0, 0);
+            bullet.create();
+            bullet.getCollisionBox().setSize(2.0f, 4.0f);
+            bullet.setPosition(101.0f, 90.0f);
+            bullet.setMotion(1000.0f, 90.0f);
+            bullet.setContinuousCollision(true);
+            
+            Mover target = new Mover(manager, 1, 0);
+            target.create();
+            target.getCollisionBox().setSize(10.0f, 10.0f);
+            target.setPosition(100.0f, 100.0f);
+            target.setMotion(200.0f, 0.0f);
+            
+            manager.act(0.1f);
+            assertEquals("broadphase " + broadphase, "begin 0 1", recorder.events.toString(""));
+        }
+    }
+    
+    private static void assertSameContacts(long seed, boolean continuous) {
+        Array<String> bruteForce = run(seed, continuous, false);
+        Array<String> broadphase = run(seed, continuous, true);
+        assertFalse(bruteForce.size == 0);
+        assertEquals("seed " + seed, bruteForce.size, broadphase.size);
+        for (int i = 0; i < bruteForce.size; i++) {
+            assertEquals("seed " + seed + ", event " + i, bruteForce.get(i), broadphase.get(i));
+        }
+    }
+    
+    private static Array<String> run(long seed, boolean continuous, boolean broadphaseEnabled) {
+        EntityManager manager = new EntityManager(32.0f);
+        manager.setBroadphaseEnabled(broadphaseEnabled);
+        Recorder recorder = new Recorder();
+        manager.addContactHandler(Mover.class, Mover.class, recorder);
+        
+        RandomXS128 random = new RandomXS128(seed);
+        int count = 0;
+        for (int tick = 0; tick < 200; tick++) {
+            int spawns = tick == 0 ? 300 : random.nextInt(3);
+            for (int i = 0; i < spawns; i++) {
+                Mover mover = new Mover(manager, count++, random.nextLong());
+                mover.create();
+                mover.getCollisionBox().setSize(4.0f + random.nextInt(28), 4.0f + random.nextInt(28));
+                mover.setPosition(random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT);
+                //a third of the movers are fast and swept, the rest move slowly
+                boolean fast = continuous && random.nextInt(3) == 0;
+                mover.setContinuousCollision(fast);
+                mover.setMotion(random.nextFloat() * (fast ? 3000.0f : 800.0f), random.nextFloat() * 360.0f);
+            }
+            manager.act(DELTA);
+        }
+        return recorder.events;
+    }
+}
@@ -18,8 +18,18 @@ public class DesktopLauncher {
         LwjglApplicationConfiguration config = new LwjglApplicationConfiguration();
         config.width = 800;
         config.height = 650;
+        
+        Core core = new Core();
+        for (int i = 0; i < arg.length; i++) {
+            if (arg[i].equals("--replay") && i + 1 < arg.length) {
+                core.setReplayFile(new FileHandle(arg[++i]));
+            } else if (arg[i].equals("--sim-thread")) {
+                core.setSimulationThreaded(true);
+            }
+        }
+        
         try {
-            new LwjglApplication(new Core(), config);
+            new LwjglApplication(core, config);
         } catch (Exception e) {
             e.printStackTrace();
             
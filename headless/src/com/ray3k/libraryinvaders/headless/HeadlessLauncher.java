@@ -0,0 +1,105 @@
+package com.ray3k.libraryinvaders.headless;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.badlogic.gdx.files.FileHandle;
+
+public class HeadlessLauncher {
+    private static final String USAGE = "Options:\n"
+            + "  --ticks <n>          simulation ticks to run (default 10000, or the whole\n"
+            + "                       replay)\n"
+            + "  --seed <n>           random seed (default 1)\n"
+            + "  --repeat-seed        play every game with the seed instead of drawing one\n"
+            + "                       per game from it\n"
+            + "  --character <name>   character image to play as (default random)\n"
+            + "  --script <script>    idle, sweep (default), a script file or inline steps\n"
+            + "                       such as \"25 Left+Space; 25 Left\"\n"
+            + "  --replay <file>      fast-forward through a recorded game instead of\n"
+            + "                       playing a script\n"
+            + "  --record <file>      record each game's input to the file\n"
+            + "  --threads <n>        entity update threads (default 1)\n"
+            + "  --draw               draw each tick with a no-op GL, to include drawing in\n"
+            + "                       the allocation check\n"
+            + "  --check-alloc <n>    fail if ticks after warmup allocate more than n bytes\n"
+            + "                       on average\n"
+            + "  --warmup <n>         ticks excluded from the allocation check (default 1000)\n"
+            + "  --warmup-games <n>   games excluded from the allocation check (default 0)";
+
+    public static void main(String[] arg) {
+        SimulationRunner runner = new SimulationRunner();
+        boolean ticksSet = false;
+        try {
+            for (int i = 0; i < arg.length; i++) {
+                String option = arg[i];
+                if (option.equals("--help")) {
+                    System.out.println(USAGE);
+                    return;
+                } else if (option.equals("--draw")) {
+                    runner.setDrawing(true);
+                    continue;
+                } else if (option.equals("--repeat-seed")) {
+                    runner.setRepeatingSeed(true);
+                    continue;
+                } else if (i + 1 == arg.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+
+                String value = arg[++i];
+                if (option.equals("--ticks")) {
+                    runner.setTicks(Integer.parseInt(value));
+                    ticksSet = true;
+                } else if (option.equals("--seed")) {
+                    runner.setSeed(Long.parseLong(value));
+                } else if (option.equals("--character")) {
+                    runner.setCharacter(value);
+                } else if (option.equals("--script")) {
+                    runner.setPlayer(new ScriptedPlayer(readScript(value)));
+                } else if (option.equals("--replay")) {
+                    FileHandle file = new FileHandle(value);
+                    if (!file.exists()) {
+                        throw new IllegalArgumentException("Replay not found: " + value);
+                    }
+                    runner.setReplayFile(file);
+                } else if (option.equals("--record")) {
+                    runner.setRecordFile(new FileHandle(value));
+                } else if (option.equals("--threads")) {
+                    runner.setParallelism(Integer.parseInt(value));
+                } else if (option.equals("--check-alloc")) {
+                    runner.setCheckingAllocations(true, Long.parseLong(value));
+                } else if (option.equals("--warmup")) {
+                    runner.setWarmup(Integer.parseInt(value));
+                } else if (option.equals("--warmup-games")) {
+                    runner.setWarmupGames(Integer.parseInt(value));
+                } else {
+                    throw new IllegalArgumentException("Unknown option: " + option);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        
+        if (runner.getReplayFile() != null && !ticksSet) {
+            runner.setTicks(Integer.MAX_VALUE);
+        }
+
+        Gdx.gl = Gdx.gl20 = NoopGL20.create();
+
+        HeadlessApplicationConfiguration config = new HeadlessApplicationConfiguration();
+        config.renderInterval = 0.0f;
+        new HeadlessApplication(runner, config);
+    }
+
+    private static String readScript(String value) {
+        if (value.equals("idle")) {
+            return ScriptedPlayer.IDLE;
+        } else if (value.equals("sweep")) {
+            return ScriptedPlayer.SWEEP;
+        }
+
+        FileHandle file = new FileHandle(value);
+        return file.exists() ? file.readString() : value;
+    }
+}
@@ -0,0 +1,102 @@
+package com.ray3k.libraryinvaders.headless;
+
+import com.badlogic.gdx.Input.Keys;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.ray3k.libraryinvaders.InputManager;
+
+/**
+ * Plays the game by feeding key events into an {@link InputManager}. A script
+ * is a looping list of steps separated by new lines or semicolons. Each step
+ * is a number of ticks followed by the keys held during them, joined with
+ * '+', or '-' for none, e.g. "25 Left+Space; 25 Left". Keys are pressed when
+ * a step starts holding them, so a held Space fires once.
+ */
+public class ScriptedPlayer {
+    public static final String IDLE = "1 -";
+    public static final String SWEEP = "25 Left+Space; 25 Left; 25 Left+Space; 25 Left; 25 Right+Space; 25 Right; 25 Right+Space; 25 Right";
+    private final IntArray durations;
+    private final Array<IntArray> steps;
+    private final IntArray held;
+    private int step;
+    private int remaining;
+
+    public ScriptedPlayer(String script) {
+        durations = new IntArray();
+        steps = new Array<IntArray>();
+        held = new IntArray();
+        
+        for (String line : script.split("[;\n]")) {
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+            
+            String[] parts = line.split("\\s+");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected \"<ticks> <keys>\": " + line);
+            }
+            
+            int duration = Integer.parseInt(parts[0]);
+            if (duration <= 0) {
+                throw new IllegalArgumentException("Step length must be positive: " + line);
+            }
+            
+            IntArray keys = new IntArray();
+            if (!parts[1].equals("-")) {
+                for (String name : parts[1].split("\\+")) {
+                    int key = Keys.valueOf(name);
+                    if (key == -1) {
+                        throw new IllegalArgumentException("Unknown key: " + name);
+                    }
+                    keys.add(key);
+                }
+            }
+            
+            durations.add(duration);
+            steps.add(keys);
+        }
+        
+        if (steps.size == 0) {
+            throw new IllegalArgumentException("Script has no steps.");
+        }
+        reset();
+    }
+    
+    /**
+     * Restarts the script from the first step with no keys held.
+     */
+    public void reset() {
+        step = 0;
+        remaining = durations.get(0);
+        held.clear();
+    }
+    
+    /**
+     * Sends the key events for the next tick.
+     */
+    public void apply(InputManager inputManager) {
+        if (remaining == 0) {
+            step = (step + 1) % steps.size;
+            remaining = durations.get(step);
+        }
+        remaining--;
+        
+        IntArray keys = steps.get(step);
+        for (int i = held.size - 1; i >= 0; i--) {
+            int key = held.get(i);
+            if (!keys.contains(key)) {
+                held.removeIndex(i);
+                inputManager.keyUp(key);
+            }
+        }
+        
+        for (int i = 0; i < keys.size; i++) {
+            int key = keys.get(i);
+            if (!held.contains(key)) {
+                held.add(key);
+                inputManager.keyDown(key);
+            }
+        }
+    }
+}
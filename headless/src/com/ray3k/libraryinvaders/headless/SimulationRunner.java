@@ -0,0 +1,388 @@
+package com.ray3k.libraryinvaders.headless;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.RandomXS128;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongArray;
+import com.ray3k.libraryinvaders.Core;
+import com.ray3k.libraryinvaders.Entity;
+import com.ray3k.libraryinvaders.EntityManager;
+import com.ray3k.libraryinvaders.states.GameState;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Runs the game simulation for a fixed number of ticks without playing sound,
+ * optionally drawing each tick with a no-op GL, and reports how long the ticks
+ * took. Each render call runs one tick. The game restarts with the same
+ * character whenever it ends, with each game's seed drawn from the run's seed.
+ * <p>
+ * Given a replay, it instead plays back the recorded game as fast as possible
+ * and stops when the game ends.
+ */
+public class SimulationRunner extends ApplicationAdapter {
+    private int ticks;
+    private int warmup;
+    private int warmupGames;
+    private long seed;
+    private boolean repeatingSeed;
+    private String character;
+    private ScriptedPlayer player;
+    private int parallelism;
+    private FileHandle recordFile;
+    private FileHandle replayFile;
+    private boolean drawing;
+    private SpriteBatch spriteBatch;
+    private boolean checkingAllocations;
+    private long allocationLimit;
+    private RandomXS128 random;
+    private Core core;
+    private GameState gameState;
+    private com.sun.management.ThreadMXBean threadBean;
+    private long threadId;
+    private final LongArray tickTimes;
+    private final Array<Entity> entities;
+    private int tick;
+    private int games;
+    private long entityTotal;
+    private int entityPeak;
+    private long allocatedBytes;
+    private int allocationTicks;
+    private long startTime;
+    private long msPerUpdate;
+    private int exitCode;
+    private boolean finished;
+
+    public SimulationRunner() {
+        ticks = 10000;
+        warmup = 1000;
+        seed = 1;
+        player = new ScriptedPlayer(ScriptedPlayer.SWEEP);
+        parallelism = 1;
+        entities = new Array<Entity>();
+        tickTimes = new LongArray();
+    }
+
+    @Override
+    public void create() {
+        try {
+            random = new RandomXS128(seed);
+
+            core = new Core();
+            core.initManagers();
+            core.createLocalFiles();
+            core.loadAssets();
+            core.getAssetManager().finishLoading();
+            core.packPixmaps();
+
+            if (character == null && replayFile == null) {
+                Array<String> characters = core.getImagePacks().get(Core.CHARACTERS_PATH);
+                if (characters.size == 0) {
+                    throw new IllegalStateException("No characters found in " + Core.CHARACTERS_PATH);
+                }
+                character = characters.get(random.nextInt(characters.size));
+            }
+
+            if (checkingAllocations) {
+                threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+                threadBean.setThreadAllocatedMemoryEnabled(true);
+                threadId = Thread.currentThread().getId();
+            }
+
+            if (drawing) {
+                spriteBatch = new SpriteBatch();
+            }
+
+            tickTimes.ensureCapacity(replayFile == null ? ticks : 0);
+            gameState = (GameState) core.getStateManager().getState("game");
+            startGame();
+            startTime = System.nanoTime();
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public void render() {
+        try {
+            if (tick >= ticks || replayFile != null && core.getStateManager().getLoadedState() != gameState) {
+                //render can run again before the exit takes effect
+                if (exitCode == 0 && !finished) {
+                    finished = true;
+                    report();
+                    Gdx.app.exit();
+                }
+                return;
+            }
+
+            if (replayFile == null) {
+                player.apply(gameState.getInputManager());
+            }
+
+            //a replay's tick length is only set while it plays
+            msPerUpdate = core.getMsPerUpdate();
+            float delta = msPerUpdate / 1000.0f;
+            long allocated = threadBean == null ? 0 : threadBean.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            core.getStateManager().act(delta);
+            tickTimes.add(System.nanoTime() - start);
+            if (drawing && core.getStateManager().getLoadedState() == gameState) {
+                //halfway between ticks, so interpolation runs too
+                core.getStateManager().draw(spriteBatch, 0.5f);
+            }
+            allocated = threadBean == null ? 0 : threadBean.getThreadAllocatedBytes(threadId) - allocated;
+
+            if (core.getStateManager().getLoadedState() != gameState) {
+                if (replayFile == null) {
+                    startGame();
+                }
+            } else if (tick >= warmup && games > warmupGames) {
+                allocatedBytes += allocated;
+                allocationTicks++;
+            }
+
+            int count = gameState.getEntityManager().getEntities(entities).size;
+            entities.clear();
+            entityTotal += count;
+            entityPeak = Math.max(entityPeak, count);
+
+            tick++;
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    private void startGame() {
+        gameState.setSeed(games == 0 || repeatingSeed ? seed : random.nextLong());
+        gameState.setSelectedCharacter(character);
+        gameState.setRecordFile(recordFile);
+        gameState.setReplayFile(replayFile);
+        core.getStateManager().loadState("game");
+        if (replayFile != null) {
+            seed = gameState.getSeed();
+            character = gameState.getSelectedCharacter();
+        }
+        EntityManager entityManager = gameState.getEntityManager();
+        entityManager.setSoundEnabled(false);
+        entityManager.setParallelism(parallelism);
+        player.reset();
+        games++;
+    }
+
+    private void report() {
+        double seconds = (System.nanoTime() - startTime) / 1000000000.0;
+        if (tick == 0) {
+            System.out.println("Simulated 0 ticks.");
+            return;
+        }
+        long[] sorted = tickTimes.toArray();
+        Arrays.sort(sorted);
+
+        if (replayFile != null) {
+            System.out.println("Replayed " + replayFile.path());
+        }
+        System.out.println(String.format("Simulated %d ticks of %d ms in %.3f s: %.0f ticks/s", tick, msPerUpdate, seconds, tick / seconds));
+        System.out.println(String.format("Seed %d, character %s, %d game(s), %d thread(s)%s", seed, character, games, parallelism, drawing ? ", drawing" : ""));
+        System.out.println(String.format("Tick time: p50 %.3f ms, p99 %.3f ms, max %.3f ms", percentile(sorted, 0.5) / 1000000.0, percentile(sorted, 0.99) / 1000000.0, sorted[tick - 1] / 1000000.0));
+        System.out.println(String.format("Entities: final %d, mean %.1f, peak %d", gameState.getEntityManager().getEntities(entities).size, (double) entityTotal / tick, entityPeak));
+        entities.clear();
+
+        if (threadBean != null) {
+            double perTick = allocationTicks == 0 ? 0.0 : (double) allocatedBytes / allocationTicks;
+            System.out.println(String.format("Allocated: %d bytes over %d ticks after warmup, %.1f bytes/tick (limit %d)", allocatedBytes, allocationTicks, perTick, allocationLimit));
+            if (perTick > allocationLimit) {
+                System.err.println("Steady-state ticks allocate more than the limit.");
+                exitCode = 1;
+            }
+        }
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[MathUtils.clamp(index, 0, sorted.length - 1)];
+    }
+
+    private void fail(Exception e) {
+        e.printStackTrace();
+        exitCode = 1;
+        Gdx.app.exit();
+    }
+
+    @Override
+    public void dispose() {
+        if (core != null) {
+            core.getStateManager().unloadState();
+            core.dispose();
+        }
+        if (spriteBatch != null) {
+            spriteBatch.dispose();
+        }
+
+        if (exitCode != 0) {
+            exit(exitCode);
+        }
+    }
+    
+    /**
+     * Ends the process with the exit code of a failed run.
+     */
+    protected void exit(int exitCode) {
+        System.exit(exitCode);
+    }
+
+    public int getTicks() {
+        return ticks;
+    }
+
+    public void setTicks(int ticks) {
+        if (ticks <= 0) {
+            throw new IllegalArgumentException("Tick count must be positive: " + ticks);
+        }
+        this.ticks = ticks;
+    }
+
+    public int getWarmup() {
+        return warmup;
+    }
+
+    /**
+     * Sets the number of ticks excluded from the allocation check while pools
+     * and collections grow to their working size.
+     */
+    public void setWarmup(int warmup) {
+        this.warmup = warmup;
+    }
+
+    public int getWarmupGames() {
+        return warmupGames;
+    }
+
+    /**
+     * Sets the number of games excluded from the allocation check, on top of
+     * the warmup ticks. The entity manager and stage are reused between
+     * games, so a game after these only allocates where it outgrows them.
+     */
+    public void setWarmupGames(int warmupGames) {
+        this.warmupGames = warmupGames;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public boolean isRepeatingSeed() {
+        return repeatingSeed;
+    }
+
+    /**
+     * Sets whether every game is played with the run's seed instead of one
+     * drawn from it, so that each game plays exactly like the first.
+     */
+    public void setRepeatingSeed(boolean repeatingSeed) {
+        this.repeatingSeed = repeatingSeed;
+    }
+
+    public String getCharacter() {
+        return character;
+    }
+
+    /**
+     * Sets the character image to play as. A random one is picked if null.
+     */
+    public void setCharacter(String character) {
+        this.character = character;
+    }
+
+    public ScriptedPlayer getPlayer() {
+        return player;
+    }
+
+    public void setPlayer(ScriptedPlayer player) {
+        this.player = player;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public FileHandle getRecordFile() {
+        return recordFile;
+    }
+
+    /**
+     * Sets the file each game's input is recorded to, or null to not record.
+     */
+    public void setRecordFile(FileHandle recordFile) {
+        this.recordFile = recordFile;
+    }
+
+    public FileHandle getReplayFile() {
+        return replayFile;
+    }
+
+    /**
+     * Sets a replay to play back instead of running scripted games. The replay
+     * sets the seed and character, and the run ends with the replayed game
+     * unless it reaches the tick limit first.
+     */
+    public void setReplayFile(FileHandle replayFile) {
+        this.replayFile = replayFile;
+    }
+
+    public boolean isDrawing() {
+        return drawing;
+    }
+
+    /**
+     * Sets whether each tick is followed by drawing the game state with a
+     * sprite batch, as a frame would. Drawing is not included in the tick
+     * times but is included in the allocation check.
+     */
+    public void setDrawing(boolean drawing) {
+        this.drawing = drawing;
+    }
+
+    public boolean isCheckingAllocations() {
+        return checkingAllocations;
+    }
+
+    /**
+     * Measures the bytes allocated by the simulation thread after the warmup
+     * ticks and games, skipping the ticks that ended a game. The run fails if they
+     * average more than the limit per tick.
+     */
+    public void setCheckingAllocations(boolean checkingAllocations, long allocationLimit) {
+        this.checkingAllocations = checkingAllocations;
+        this.allocationLimit = allocationLimit;
+    }
+
+    public long getAllocationLimit() {
+        return allocationLimit;
+    }
+
+    /**
+     * Returns the bytes allocated by the measured ticks so far.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Returns the number of ticks whose allocations were measured.
+     */
+    public int getAllocationTicks() {
+        return allocationTicks;
+    }
+}
@@ -0,0 +1,58 @@
+package com.ray3k.libraryinvaders.headless;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Plays the same scripted game over and over headlessly, acting and drawing
+ * each tick on a no-op GL, and checks that once the first game has grown the
+ * pools and collections, no tick allocates on the simulation thread. Runs
+ * from core/assets like the launchers.
+ * <p>
+ * The build runs tests interpreted: a deoptimizing compiler rebuilds objects
+ * it had optimized away, which would show up here as allocations the code
+ * never made.
+ */
+public class AllocationTest {
+    private static final int TICKS = 6000;
+    
+    @Test
+    public void steadyStateTicksDoNotAllocate() throws InterruptedException {
+        final CountDownLatch finished = new CountDownLatch(1);
+        final int[] exitCode = new int[1];
+        SimulationRunner runner = new SimulationRunner() {
+            @Override
+            public void dispose() {
+                super.dispose();
+                finished.countDown();
+            }
+
+            @Override
+            protected void exit(int code) {
+                exitCode[0] = code;
+            }
+        };
+        runner.setTicks(TICKS);
+        runner.setWarmup(0);
+        runner.setWarmupGames(1);
+        runner.setRepeatingSeed(true);
+        runner.setDrawing(true);
+        runner.setCheckingAllocations(true, 0);
+        
+        Gdx.gl = Gdx.gl20 = NoopGL20.create();
+        HeadlessApplicationConfiguration config = new HeadlessApplicationConfiguration();
+        config.renderInterval = 0.0f;
+        new HeadlessApplication(runner, config);
+        assertTrue("run timed out", finished.await(5, TimeUnit.MINUTES));
+        
+        assertEquals("run failed", 0, exitCode[0]);
+        assertTrue("no game after the first", runner.getAllocationTicks() > 0);
+        assertEquals("bytes allocated over " + runner.getAllocationTicks() + " ticks", 0, runner.getAllocatedBytes());
+    }
+}